@@ -102,8 +102,9 @@ public class KlocworkBuildAction implements Action, SimpleBuildStep.LastBuildAct
 
     @Override
     public Collection<? extends Action> getProjectActions() {
-        List<KlocworkProjectAction> projectActions = new ArrayList<>();
+        List<Action> projectActions = new ArrayList<>();
         projectActions.add(new KlocworkProjectAction(run.getParent()));
+        projectActions.add(new KlocworkTrendAction(run.getParent()));
         return projectActions;
     }
 }
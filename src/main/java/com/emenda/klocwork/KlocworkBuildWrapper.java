@@ -2,6 +2,7 @@ package com.emenda.klocwork;
 
 import com.emenda.klocwork.config.KlocworkInstallConfig;
 import com.emenda.klocwork.config.KlocworkServerConfig;
+import hudson.AbortException;
 import hudson.EnvVars;
 import hudson.Extension;
 import hudson.FilePath;
@@ -18,11 +19,13 @@ import net.sf.json.JSONObject;
 import org.apache.commons.lang3.StringUtils;
 import org.jenkinsci.Symbol;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
 
 import javax.servlet.ServletException;
 import java.io.IOException;
+import java.util.List;
 
 public class KlocworkBuildWrapper extends SimpleBuildWrapper {
 
@@ -30,6 +33,7 @@ public class KlocworkBuildWrapper extends SimpleBuildWrapper {
     private final String installConfig;
     private final String serverProject;
     private final String ltoken;
+    private boolean prefetchServerGateway;
 
     @DataBoundConstructor
     public KlocworkBuildWrapper(String serverConfig, String installConfig,
@@ -113,12 +117,48 @@ public class KlocworkBuildWrapper extends SimpleBuildWrapper {
                 // command line tools
                 context.env(KlocworkConstants.KLOCWORK_LTOKEN, initialEnvironment.expand(ltoken));
             }
+
+            if (prefetchServerGateway) {
+                startServerGatewaySearches(context, build, launcher, initialEnvironment, logger);
+            }
+    }
+
+    /*
+     * Starts the searches of the job's server gateway in the background, the
+     * gateway publisher uses their results at the end of the build
+     */
+    private void startServerGatewaySearches(Context context, Run<?, ?> build, Launcher launcher,
+                                            EnvVars initialEnvironment, KlocworkLogger logger)
+                                            throws AbortException {
+        // the publishers of pipeline jobs are not known before they run
+        KlocworkGatewayPublisher gateway = (build.getParent() instanceof AbstractProject) ?
+            ((AbstractProject<?, ?>) build.getParent()).getPublishersList().get(KlocworkGatewayPublisher.class) :
+            null;
+        if (gateway == null) {
+            logger.logMessage("No Klocwork quality gateway publisher found, " +
+                "server gateway searches are not started early");
+            return;
+        }
+        EnvVars envVars = new EnvVars(initialEnvironment);
+        envVars.putAll(context.getEnv());
+        List<String> requests = gateway.getServerRequests(envVars);
+        if (!requests.isEmpty()) {
+            KlocworkGatewayPrefetch.start(build, requests, envVars, launcher);
+            logger.logMessage("Started " + Integer.toString(requests.size()) +
+                " server gateway searches in the background");
+        }
     }
 
     public String getServerConfig() { return serverConfig; }
     public String getInstallConfig() { return installConfig; }
     public String getServerProject() { return serverProject; }
     public String getLtoken() { return ltoken; }
+    public boolean isPrefetchServerGateway() { return prefetchServerGateway; }
+
+    @DataBoundSetter
+    public void setPrefetchServerGateway(boolean prefetchServerGateway) {
+        this.prefetchServerGateway = prefetchServerGateway;
+    }
 
     public final static String getNoneValue() { return "-- none --"; }
 
@@ -133,6 +173,7 @@ public class KlocworkBuildWrapper extends SimpleBuildWrapper {
 
          private String globalLicenseHost;
          private String globalLicensePort;
+         private String issueHeapBudget;
          private CopyOnWriteList<KlocworkServerConfig> serverConfigs = new CopyOnWriteList<KlocworkServerConfig>();
          private CopyOnWriteList<KlocworkInstallConfig> installConfigs = new CopyOnWriteList<KlocworkInstallConfig>();
 
@@ -154,12 +195,23 @@ public class KlocworkBuildWrapper extends SimpleBuildWrapper {
             installConfigs.replaceBy(req.bindJSONToList(KlocworkInstallConfig.class, formData.get("installConfigs")));
             globalLicenseHost = formData.getString("globalLicenseHost");
             globalLicensePort = formData.getString("globalLicensePort");
+            issueHeapBudget = formData.getString("issueHeapBudget");
             save();
             return super.configure(req,formData);
         }
 
         public String getGlobalLicenseHost() { return globalLicenseHost; }
         public String getGlobalLicensePort() { return globalLicensePort; }
+        public String getIssueHeapBudget() { return issueHeapBudget; }
+
+        /*
+         * Returns the issue heap budget in bytes
+         */
+        public long getIssueHeapBudgetValue() {
+            long budget = StringUtils.isNumeric(issueHeapBudget) ?
+                Long.parseLong(issueHeapBudget) : KlocworkConstants.DEFAULT_ISSUE_HEAP_BUDGET;
+            return budget * 1024 * 1024;
+        }
 
         public KlocworkServerConfig[] getServerConfigs() {
             return serverConfigs.toArray(new KlocworkServerConfig[0]);
@@ -195,6 +247,16 @@ public class KlocworkBuildWrapper extends SimpleBuildWrapper {
             }
         }
 
+        public FormValidation doCheckIssueHeapBudget(@QueryParameter String value)
+            throws IOException, ServletException {
+
+            if (StringUtils.isEmpty(value) || StringUtils.isNumeric(value)) {
+                return FormValidation.ok();
+            } else {
+                return FormValidation.error("Issue heap budget must be a number of megabytes");
+            }
+        }
+
         public ListBoxModel doFillServerConfigItems() {
             ListBoxModel items = new ListBoxModel();
             items.add(getNoneValue());
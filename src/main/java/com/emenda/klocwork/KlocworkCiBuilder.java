@@ -1,7 +1,14 @@
 package com.emenda.klocwork;
 
 import com.emenda.klocwork.config.KlocworkCiConfig;
+import com.emenda.klocwork.definitions.KlocworkCiSummary;
 import com.emenda.klocwork.definitions.KlocworkIssue;
+import com.emenda.klocwork.util.KlocworkAnalysisReuse;
+import com.emenda.klocwork.util.KlocworkConsoleListing;
+import com.emenda.klocwork.util.KlocworkProjectLock;
+import com.emenda.klocwork.util.KlocworkProjectSnapshot;
+import com.emenda.klocwork.util.KlocworkResultCache;
+import com.emenda.klocwork.util.KlocworkToolDetector;
 import com.emenda.klocwork.util.KlocworkUtil;
 import hudson.*;
 import hudson.init.InitMilestone;
@@ -18,7 +25,12 @@ import org.kohsuke.stapler.StaplerRequest;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 public class KlocworkCiBuilder extends Builder implements SimpleBuildStep {
 
@@ -49,19 +61,28 @@ public class KlocworkCiBuilder extends Builder implements SimpleBuildStep {
         perform(build, envVars, workspace, launcher, listener);
     }
 
-    public void perform(Run<?, ?> build, EnvVars envVars, FilePath workspace, Launcher launcher, TaskListener listener)
+    public void perform(Run<?, ?> build, EnvVars envVars, FilePath workspace, Launcher launcher,
+                        TaskListener listener)
+        throws AbortException {
+        analyse(build, envVars, workspace, launcher, listener);
+    }
+
+    /*
+     * Runs the analysis and returns a summary of its issues
+     */
+    public KlocworkCiSummary analyse(Run<?, ?> build, EnvVars envVars, FilePath workspace, Launcher launcher,
+                                     TaskListener listener)
         throws AbortException {
         KlocworkLogger logger = new KlocworkLogger("CiBuilder", listener.getLogger());
         logger.logMessage("Starting Klocwork Ci Analysis");
+        long startTime = System.currentTimeMillis();
+        KlocworkProjectLock slotLock = null;
         try {
 
-            if (KlocworkUtil.executeCommand(launcher, listener,
-                    workspace, envVars,
-                    ciConfig.getVersionCiAgentCmd(), true) > 0){
-                KlocworkUtil.executeCommand(launcher, listener,
-                        workspace, envVars,
-                        ciConfig.getVersionKwCheckCmd());
-                ciConfig.setCiTool("kwcheck");
+            // the tool is kept per build, the config is shared between
+            // concurrent builds of the job
+            String ciTool = KlocworkToolDetector.getCiTool(launcher, listener, workspace, envVars);
+            if (ciTool.equals(KlocworkToolDetector.KWCHECK)) {
                 logger.logMessage("");
                 logger.logMessage("*******************************************************************************");
                 logger.logMessage("");
@@ -72,89 +93,267 @@ public class KlocworkCiBuilder extends Builder implements SimpleBuildStep {
                 logger.logMessage("*******************************************************************************");
                 logger.logMessage("");
             }
-            else{
-                ciConfig.setCiTool("kwciagent");
+            FilePath projectRoot = ciConfig.getProjectRoot(workspace, envVars);
+            if (ciConfig.isIsolateProjectDir()) {
+                // each concurrent build gets a slot with its own local project
+                FilePath slotsDir = projectRoot.child(KlocworkConstants.PROJECT_SLOTS_DIR);
+                int slot = 0;
+                while ((slotLock = KlocworkProjectLock.tryAcquire(
+                        slotsDir.child(Integer.toString(slot) + ".lock"), build)) == null) {
+                    slot++;
+                }
+                projectRoot = slotsDir.child(Integer.toString(slot));
+                logger.logMessage("Using local project directory " + projectRoot.getRemote());
             }
-            if (!ciConfig.hasExistingProject(workspace, envVars)) {
-                KlocworkUtil.executeCommand(launcher, listener,
-                        workspace, envVars,
-                        ciConfig.getCiToolCreateCmd(envVars, workspace));
+            // a local project stores absolute paths, so a slot is created for
+            // its own location rather than copied from another project
+            if (!ciConfig.hasExistingProject(projectRoot)) {
+                createProject(envVars, workspace, launcher, listener, logger, ciTool, projectRoot);
             } else {
                 // update existing project
                 KlocworkUtil.executeCommand(launcher, listener,
                         workspace, envVars,
-                        ciConfig.getCiToolSetCmd(envVars, workspace));
+                        ciConfig.getCiToolSetCmd(ciTool, envVars, projectRoot));
             }
-            String diffList = "";
+            List<String> diffList = Collections.emptyList();
+            boolean runAnalysis = true;
+            boolean listIssues = true;
             // should we perform incremental analysis?
             if (ciConfig.getIncrementalAnalysis()) {
-                logger.logMessage("Performing incremental analysis using " +
-                "change list specified in " + ciConfig.getDiffFileList(envVars));
                 // check which type of incremental analysis (e.g. git/manual)
-                // check if we need to execute git diff first
                 if (ciConfig.isGitDiffType()) {
-                    logger.logMessage("Executing git diff to get change list");
-                    KlocworkUtil.executeCommand(launcher, listener,
-                            workspace, envVars,
-                            ciConfig.getGitDiffCmd(envVars));
+                    logger.logMessage("Performing incremental analysis using " +
+                    "git changes since " + envVars.expand(ciConfig.getDiffAnalysisConfig().getGitPreviousCommit()));
                 } else {
-                    // manual diff just requires reading from diff file, same as git
-                    // so do nothing
+                    logger.logMessage("Performing incremental analysis using " +
+                    "change list specified in " + ciConfig.getDiffFileList(envVars));
                 }
 
                 // check diff file list and get list of files to analyse, if none,
                 // diffList will be empty
                 diffList = ciConfig.getCiToolDiffList(envVars, workspace, launcher);
-                // if there are files to analyse, run kwcheck run
-                if (!StringUtils.isEmpty(diffList)) {
-                    KlocworkUtil.executeCommand(launcher, listener,
-                            workspace, envVars,
-                            ciConfig.getCiToolRunCmd(envVars, workspace, diffList));
-                }
-                else{
+                if (diffList.isEmpty()) {
                     // we do not need to do anything!
                     logger.logMessage("Incremental analysis did not detect any " +
                             "changed files in the build specification. Skipping the analysis");
+                    // an empty file list would list the whole project
+                    runAnalysis = false;
+                    listIssues = false;
                 }
             }
+            else if (ciConfig.isSharded(envVars)) {
+                logger.logMessage("Analysing shard " +
+                        Integer.toString(ciConfig.getShardIndexValue(envVars) + 1) + " of " +
+                        Integer.toString(ciConfig.getShardCountValue(envVars)));
+                diffList = ciConfig.getCiToolShardList(envVars, workspace, launcher);
+                // an empty file list would analyse the whole build specification
+                if (diffList.isEmpty()) {
+                    logger.logMessage("No files in the build specification were " +
+                            "assigned to this shard. Skipping the analysis");
+                    // listing an empty file list would list the whole project
+                    // and duplicate the other shards' issues in the merged report
+                    runAnalysis = false;
+                    listIssues = false;
+                }
+            }
+
+            FilePath xmlReport;
+            String path = envVars.expand(KlocworkUtil.getDefaultKwcheckReportFile(ciConfig.getReportFile()));
+            File isAbs = new File(path);
+            if(isAbs.isAbsolute()){
+                xmlReport = new FilePath (launcher.getChannel(), path);
+            }
             else{
+                xmlReport = new FilePath (workspace, path);
+            }
+
+            // a build with the same inputs as the last good analysis of the
+            // job on this agent (e.g. a re-triggered build) reuses its output
+            KlocworkAnalysisReuse analysisReuse = null;
+            String fingerprint = null;
+            ByteArrayOutputStream reusedOutputStream = null;
+            if (runAnalysis && ciConfig.isReuseUnchangedAnalysis()) {
+                analysisReuse = KlocworkAnalysisReuse.forReport(build, workspace, xmlReport);
+                if (analysisReuse != null) {
+                    try {
+                        fingerprint = ciConfig.getAnalysisFingerprint(ciTool, envVars,
+                                workspace, launcher, projectRoot, diffList);
+                        reusedOutputStream = analysisReuse.restore(fingerprint);
+                    } catch (AbortException ex) {
+                        logger.logMessage("Unable to fingerprint the analysis inputs: " + ex.getMessage());
+                    }
+                }
+                if (reusedOutputStream != null) {
+                    logger.logMessage("Inputs unchanged since the last good analysis " +
+                            "on this agent, analysis reused");
+                    runAnalysis = false;
+                }
+            }
+
+            // files unchanged since an earlier build on this agent reuse its
+            // issues, only the remaining files are analysed and listed
+            KlocworkResultCache resultCache = ciConfig.getResultCache(workspace);
+            KlocworkResultCache.Lookup cachedResults = null;
+            if (runAnalysis && resultCache != null && !diffList.isEmpty()) {
+                try {
+                    cachedResults = launcher.getChannel().call(resultCache.lookup(
+                            diffList,
+                            envVars.expand(KlocworkUtil.getBuildSpecPath(ciConfig.getBuildSpec(), workspace)),
+                            ciConfig.getBuildSpecIndexFile(workspace, envVars).getRemote(),
+                            ciConfig.getKwpsDir(projectRoot).getRemote(),
+                            StringUtils.defaultString(KlocworkToolDetector.getToolFingerprint(workspace, envVars))));
+                    logger.logMessage("Reusing cached results of " +
+                            Integer.toString(cachedResults.getHitCount()) + " unchanged files");
+                    diffList = cachedResults.getMisses();
+                    if (diffList.isEmpty()) {
+                        runAnalysis = false;
+                        listIssues = false;
+                    }
+                } catch (IOException ex) {
+                    logger.logMessage("Result cache not available: " + ex.getMessage());
+                }
+            }
+
+            if (runAnalysis) {
                 KlocworkUtil.executeCommand(launcher, listener,
                         workspace, envVars,
-                        ciConfig.getCiToolRunCmd(envVars, workspace, diffList));
+                        ciConfig.getCiToolRunCmd(ciTool, envVars, projectRoot, diffList));
             }
 
             // Output any local issues
-            ByteArrayOutputStream kwcheckListOutputStream = KlocworkUtil.executeCommandParseOutput(launcher,
-                    workspace, envVars,
-                    ciConfig.getCiToolListCmd(envVars, workspace, diffList));
+            ByteArrayOutputStream kwcheckListOutputStream;
+            // whether the output is a complete listing of the analysis
+            boolean listSucceeded = true;
+            if (reusedOutputStream != null) {
+                kwcheckListOutputStream = reusedOutputStream;
+            } else if (listIssues) {
+                kwcheckListOutputStream = new ByteArrayOutputStream();
+                ByteArrayOutputStream listErrors = new ByteArrayOutputStream();
+                int listReturnCode = KlocworkUtil.executeCommandParseOutput(launcher,
+                        workspace, envVars,
+                        ciConfig.getCiToolListCmd(ciTool, envVars, projectRoot, diffList),
+                        kwcheckListOutputStream, listErrors);
+                listErrors.writeTo(listener.getLogger());
+                if (listReturnCode != 0) {
+                    logger.logMessage("Listing the issues returned code " + Integer.toString(listReturnCode) +
+                            ", the results are not cached or reused");
+                    listSucceeded = false;
+                }
+            } else {
+                kwcheckListOutputStream = new ByteArrayOutputStream();
+            }
+            Charset charset = (launcher.isUnix()) ? StandardCharsets.UTF_8 : Charset.defaultCharset();
+            // the listing of the analysed files alone, for the result cache
+            byte[] analysedListOutput = null;
+            if (cachedResults != null && kwcheckListOutputStream != null) {
+                if (listIssues) {
+                    analysedListOutput = kwcheckListOutputStream.toByteArray();
+                }
+                kwcheckListOutputStream = cachedResults.merge(kwcheckListOutputStream,
+                        ciTool.equals(KlocworkToolDetector.KWCIAGENT), charset);
+            }
+            KlocworkConsoleListing listing = null;
             if(kwcheckListOutputStream != null){
-                FilePath xmlReport;
-                String path = envVars.expand(KlocworkUtil.getDefaultKwcheckReportFile(ciConfig.getReportFile()));
-                File isAbs = new File(path);
-                if(isAbs.isAbsolute()){
-                    xmlReport = new FilePath (launcher.getChannel(), path);
+                int returnCode;
+                if (ciConfig.isSummaryConsoleOutput()) {
+                    // print a summary and archive the full listing with the build
+                    FilePath issueListing = xmlReport.sibling(
+                            KlocworkConstants.DEFAULT_KWCHECK_ISSUE_LISTING_FILE);
+                    try (Writer listingWriter = KlocworkUtil.createGzipWriter(issueListing)) {
+                        listing = new KlocworkConsoleListing(
+                                listener.getLogger(), ciConfig.getConsoleIssueLimitValue(), listingWriter);
+                        returnCode = KlocworkUtil.generateKwListOutput(
+                                xmlReport,
+                                kwcheckListOutputStream,
+                                listener,
+                                listing,
+                                ciTool,
+                                launcher
+                        );
+                        listing.printSummary(issueListing.getName());
+                    }
+                    KlocworkUtil.archiveArtifact(build, issueListing, launcher, listener);
+                } else {
+                    listing = new KlocworkConsoleListing(listener.getLogger());
+                    returnCode = KlocworkUtil.generateKwListOutput(
+                            xmlReport,
+                            kwcheckListOutputStream,
+                            listener,
+                            listing,
+                            ciTool,
+                            launcher
+                    );
+                }
+                // only the output of a successful listing that made a valid
+                // report is cached
+                if (analysedListOutput != null && listSucceeded && returnCode == 0) {
+                    try {
+                        launcher.getChannel().call(resultCache.store(
+                                cachedResults, analysedListOutput, charset));
+                    } catch (IOException ex) {
+                        logger.logMessage("Unable to update the result cache: " + ex.getMessage());
+                    }
                 }
-                else{
-                    xmlReport = new FilePath (workspace, path);
+                // only the output of an analysis and listing that succeeded
+                // (a failed analysis aborts the build) and made a valid
+                // report is reused
+                if (fingerprint != null && reusedOutputStream == null && listSucceeded && returnCode == 0) {
+                    analysisReuse.save(fingerprint, kwcheckListOutputStream);
                 }
-                KlocworkUtil.generateKwListOutput(
-                        xmlReport,
-                        kwcheckListOutputStream,
-                        listener,
-                        ciConfig.getCiTool(),
-                        launcher
-                );
 
             }
             else{
                 logger.logMessage("Unable to generate diff analysis output");
             }
+            return (listing != null) ?
+                new KlocworkCiSummary(listing.getIssueCount(), listing.getSeverityTotals(),
+                        listing.getStatusTotals(), xmlReport.getRemote(), !runAnalysis,
+                        System.currentTimeMillis() - startTime) :
+                new KlocworkCiSummary(0, Collections.<String, Integer>emptyMap(),
+                        Collections.<String, Integer>emptyMap(), xmlReport.getRemote(), !runAnalysis,
+                        System.currentTimeMillis() - startTime);
         }  catch (IOException | InterruptedException ex) {
             throw new AbortException(ex.getMessage());
+        } finally {
+            if (slotLock != null) {
+                try {
+                    slotLock.release();
+                } catch (IOException | InterruptedException ex) {
+                    // a lock left behind is taken over once this build has finished
+                    logger.logMessage("Unable to release local project slot: " + ex.getMessage());
+                }
+            }
         }
 
     }
 
+    /*
+     * Creates a new local project, seeding it from a snapshot when possible
+     */
+    private void createProject(EnvVars envVars, FilePath workspace, Launcher launcher,
+                               TaskListener listener, KlocworkLogger logger, String ciTool,
+                               FilePath projectRoot)
+        throws IOException, InterruptedException {
+        FilePath kwlp = ciConfig.getKwlpDir(projectRoot);
+        FilePath kwps = ciConfig.getKwpsDir(projectRoot);
+        KlocworkProjectSnapshot snapshot = ciConfig.getProjectSnapshot(ciTool, envVars, workspace, projectRoot);
+        if (snapshot != null && snapshot.restore(kwlp, kwps)) {
+            // seeded from a project created by an earlier build, only
+            // the server settings need updating
+            logger.logMessage("Local project restored from snapshot");
+            KlocworkUtil.executeCommand(launcher, listener,
+                    workspace, envVars,
+                    ciConfig.getCiToolSetCmd(ciTool, envVars, projectRoot));
+        } else {
+            KlocworkUtil.executeCommand(launcher, listener,
+                    workspace, envVars,
+                    ciConfig.getCiToolCreateCmd(ciTool, envVars, projectRoot));
+            if (snapshot != null) {
+                snapshot.save(kwlp, kwps);
+            }
+        }
+    }
+
     protected Object readResolve() {
         if (desktopConfig != null) {
             ciConfig = desktopConfig;
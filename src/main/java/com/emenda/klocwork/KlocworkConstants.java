@@ -27,11 +27,43 @@ public class KlocworkConstants {
     public static final String KLOCWORK_ISSUE_WARNING = "Warning";
     public static final String KLOCWORK_ISSUE_REVIEW = "Review";
     public static final int MAX_CHART_HISTORY = 20;
+    // points drawn per trend series, longer histories are downsampled
+    public static final int MAX_CHART_POINTS = 100;
+    // issue counts of the builds of a job, kept in the job directory
+    public static final String TREND_INDEX_FILE = "klocwork-trend.tsv";
 
     public static final String DEFAULT_BUILD_SPEC = "kwinject.out";
     public static final String DEFAULT_TABLES_DIR = "kwtables";
     public static final String DEFAULT_KWCHECK_REPORT_FILE = "kwcheck_report.xml";
     public static final String DEFAULT_DIFF_FILE_LIST = "diff_file_list.txt";
+    public static final String DEFAULT_KWCHECK_ISSUE_LISTING_FILE = "kwcheck_issues.txt.gz";
+    public static final String DEFAULT_SERVER_ISSUE_LISTING_FILE = "klocwork_server_issues.txt.gz";
+
+    // time to wait for a gateway search started with the build, in milliseconds
+    public static final long GATEWAY_PREFETCH_TIMEOUT = 5 * 60 * 1000;
+
+    // issue id sets kept in the build directory
+    public static final String SERVER_ISSUE_IDS_FILE = "klocwork-server-issues.ids";
+
+    // dashboard issue lists, kept out of build.xml
+    public static final String DASHBOARD_ISSUES_FILE = "klocwork-dashboard-issues.bin.gz";
+
+    // rows returned per request by the dashboard issues endpoint
+    public static final int DASHBOARD_PAGE_SIZE = 100;
+    public static final int DASHBOARD_MAX_PAGE_SIZE = 1000;
+
+    // memory the gateway may use for dashboard issues before writing them to disk, in MB
+    public static final int DEFAULT_ISSUE_HEAP_BUDGET = 256;
+
+    public static final int DEFAULT_CONSOLE_ISSUE_LIMIT = 20;
+    public static final String BUILD_SPEC_INDEX_FILE = ".kwbsindex";
+    public static final String PROJECT_SNAPSHOT_CACHE_DIR = "klocwork-project-snapshots";
+    public static final int MAX_PROJECT_SNAPSHOTS = 5;
+    public static final String PROJECT_SLOTS_DIR = ".kwslots";
+    public static final String RESULT_CACHE_DIR = "klocwork-result-cache";
+    public static final long MAX_RESULT_CACHE_SIZE = 512L * 1024 * 1024;
+    public static final String ANALYSIS_REUSE_CACHE_DIR = "klocwork-analysis-reuse";
+    public static final int MAX_REUSED_ANALYSES = 50;
 
     public static final String KLOCWORK_URL = "KLOCWORK_URL";
     public static final String KLOCWORK_LICENSE_HOST = "KLOCWORK_LICENSE_HOST";
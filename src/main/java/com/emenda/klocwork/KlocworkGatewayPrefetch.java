@@ -0,0 +1,223 @@
+package com.emenda.klocwork;
+
+import com.emenda.klocwork.util.KlocworkUtil;
+import hudson.EnvVars;
+import hudson.Launcher;
+import hudson.model.Computer;
+import hudson.model.Run;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/*
+ * Server gateway searches started in the background when the build starts
+ * (see KlocworkBuildWrapper), so that the gateway publisher at the end of the
+ * build finds their results ready. Searches are keyed on the web API request
+ * and each result is used once; the gateway runs a search itself if its
+ * result is missing, failed or takes too long.
+ *
+ * All searches run at the same time. Each one streams its response to a
+ * temporary file on the controller instead of holding it, so waiting results
+ * take no memory; a result is only read back when the gateway takes it, and
+ * its file is then deleted.
+ *
+ * The searches are kept with the running build only in memory, not as an
+ * action of the build, so nothing of them is saved with it; a build resumed
+ * after a restart runs them again.
+ */
+public class KlocworkGatewayPrefetch {
+
+    // weak keys, so that the searches of a build never outlive it
+    private static final Map<Run<?, ?>, KlocworkGatewayPrefetch> PREFETCHES =
+        Collections.synchronizedMap(new WeakHashMap<Run<?, ?>, KlocworkGatewayPrefetch>());
+
+    private final Map<String, Search> searches;
+
+    private KlocworkGatewayPrefetch(Map<String, Search> searches) {
+        this.searches = searches;
+    }
+
+    /*
+     * Starts the given search requests for the build
+     */
+    public static KlocworkGatewayPrefetch start(Run<?, ?> build, List<String> requests,
+                                                EnvVars envVars, Launcher launcher) {
+        Map<String, Search> searches = new HashMap<>();
+        for (String request : requests) {
+            if (!searches.containsKey(request)) {
+                Search search = new Search(request, envVars, launcher);
+                search.future = Computer.threadPoolForRemoting.submit(search);
+                searches.put(request, search);
+            }
+        }
+        KlocworkGatewayPrefetch prefetch = new KlocworkGatewayPrefetch(searches);
+        KlocworkGatewayPrefetch previous = PREFETCHES.put(build, prefetch);
+        if (previous != null) {
+            previous.cancel();
+        }
+        return prefetch;
+    }
+
+    /*
+     * Returns the searches started with the build, or null if there are none
+     */
+    public static KlocworkGatewayPrefetch get(Run<?, ?> build) {
+        return PREFETCHES.get(build);
+    }
+
+    /*
+     * Cancels the searches of the build whose results have not been used
+     * and forgets them, once the gateway is done with them
+     */
+    public static void release(Run<?, ?> build) {
+        KlocworkGatewayPrefetch prefetch = PREFETCHES.remove(build);
+        if (prefetch != null) {
+            prefetch.cancel();
+        }
+    }
+
+    /*
+     * Returns the result of the search for request, waiting up to timeout
+     * milliseconds, or null if the search was not started or did not succeed
+     */
+    public JSONArray take(String request, long timeout, KlocworkLogger logger)
+                                        throws InterruptedException {
+        Search search;
+        synchronized (this) {
+            search = searches.remove(request);
+        }
+        if (search == null) {
+            return null;
+        }
+        // waited for without holding the lock, so that the searches can be
+        // cancelled meanwhile
+        File result = null;
+        try {
+            result = search.future.get(timeout, TimeUnit.MILLISECONDS);
+            return (result != null) ? read(result) : null;
+        } catch (ExecutionException ex) {
+            logger.logMessage("WARNING: background search failed, searching again: " +
+                ex.getCause().getMessage());
+        } catch (TimeoutException ex) {
+            search.discard();
+            logger.logMessage("WARNING: background search did not finish in time, searching again");
+        } catch (IOException ex) {
+            logger.logMessage("WARNING: failed to read the background search result, searching again: " +
+                ex.getMessage());
+        } finally {
+            if (result != null) {
+                result.delete();
+            }
+        }
+        return null;
+    }
+
+    /*
+     * Cancels the searches started with the build, if any, after a step
+     * changed the issues on the server (e.g. a load or a cross-project sync)
+     */
+    public static void discard(Run<?, ?> build, KlocworkLogger logger, String step) {
+        KlocworkGatewayPrefetch prefetch = get(build);
+        if (prefetch != null) {
+            logger.logMessage("Discarding gateway searches started before the " + step);
+            prefetch.cancel();
+        }
+    }
+
+    /*
+     * Cancels the searches whose results have not been used
+     */
+    public synchronized void cancel() {
+        for (Search search : searches.values()) {
+            search.discard();
+        }
+        searches.clear();
+    }
+
+    private static JSONArray read(File result) throws IOException {
+        JSONArray response = new JSONArray();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(result.toPath())), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                response.add(JSONObject.fromObject(line));
+            }
+        }
+        return response;
+    }
+
+    /*
+     * A search writing its response to a temporary file, returned once
+     * complete. The file of a discarded search is deleted as soon as the
+     * search is done with it
+     */
+    private static class Search implements Callable<File> {
+
+        private final String request;
+        private final EnvVars envVars;
+        private final Launcher launcher;
+        private volatile Future<File> future;
+        private boolean discarded;
+        private File result;
+
+        Search(String request, EnvVars envVars, Launcher launcher) {
+            this.request = request;
+            this.envVars = envVars;
+            this.launcher = launcher;
+        }
+
+        public File call() throws Exception {
+            File file = Files.createTempFile("klocwork-search", ".ndjson.gz").toFile();
+            try {
+                try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                        new GZIPOutputStream(Files.newOutputStream(file.toPath())), StandardCharsets.UTF_8))) {
+                    KlocworkUtil.writeJSONResponse(request, envVars, launcher, out);
+                }
+            } catch (Exception ex) {
+                file.delete();
+                throw ex;
+            }
+            synchronized (this) {
+                if (discarded) {
+                    file.delete();
+                    return null;
+                }
+                result = file;
+                return file;
+            }
+        }
+
+        /*
+         * Cancels the search, or deletes its result if it is complete
+         */
+        synchronized void discard() {
+            discarded = true;
+            future.cancel(true);
+            if (result != null) {
+                result.delete();
+                result = null;
+            }
+        }
+    }
+}
@@ -7,6 +7,10 @@ import com.emenda.klocwork.reporting.KlocworkDashboard;
 import com.emenda.klocwork.reporting.KlocworkProjectRedirectLink;
 import com.emenda.klocwork.services.KlocworkApiConnection;
 import com.emenda.klocwork.definitions.KlocworkIssue;
+import com.emenda.klocwork.definitions.KlocworkIssueSet;
+import com.emenda.klocwork.util.KlocworkConsoleListing;
+import com.emenda.klocwork.util.KlocworkIssueIdSet;
+import com.emenda.klocwork.util.KlocworkQueryFilter;
 import com.emenda.klocwork.util.KlocworkUtil;
 import com.emenda.klocwork.util.KlocworkXMLReportParser;
 
@@ -19,13 +23,14 @@ import hudson.model.AbstractProject;
 import hudson.model.Result;
 import hudson.model.Run;
 import hudson.model.TaskListener;
-import com.emenda.klocwork.util.KlocworkXMLReportParserIssueList;
+import com.emenda.klocwork.util.KlocworkXMLReportIssueWriter;
 import hudson.*;
 import hudson.model.*;
 import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.BuildStepMonitor;
 import hudson.tasks.Publisher;
 
+import jenkins.model.Jenkins;
 import jenkins.tasks.SimpleBuildStep;
 import net.sf.json.JSONArray;
 import net.sf.json.JSONObject;
@@ -33,13 +38,21 @@ import org.apache.commons.lang3.StringUtils;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.StaplerRequest;
 
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.lang.InterruptedException;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.net.URLEncoder;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
 
 
 public class KlocworkGatewayPublisher extends Publisher implements SimpleBuildStep {
@@ -94,59 +107,75 @@ public class KlocworkGatewayPublisher extends Publisher implements SimpleBuildSt
 
     public void perform(Run<?, ?> build, EnvVars envVars, FilePath workspace, Launcher launcher, TaskListener listener)
     throws AbortException {
+        // the global heap budget is shared evenly by the local and server issues
+        long heapBudget = Jenkins.getInstance().getDescriptorByType(KlocworkBuildWrapper.DescriptorImpl.class)
+                .getIssueHeapBudgetValue() / 2;
+        KlocworkIssueSet localIssues = new KlocworkIssueSet(heapBudget);
+        KlocworkIssueSet serverIssues = new KlocworkIssueSet(heapBudget);
+        try {
+            perform(build, envVars, workspace, launcher, listener, localIssues, serverIssues);
+        } finally {
+            try {
+                localIssues.close();
+                serverIssues.close();
+            } catch (IOException ex) {
+                listener.getLogger().println("WARNING: failed to delete temporary issue files: " + ex.getMessage());
+            }
+        }
+    }
+
+    private void perform(Run<?, ?> build, EnvVars envVars, FilePath workspace, Launcher launcher, TaskListener listener,
+                         KlocworkIssueSet localIssues, KlocworkIssueSet serverIssues) throws AbortException {
         KlocworkLogger logger = new KlocworkLogger("KlocworkGatewayPublisher", listener.getLogger());
         boolean stopBuild = false;
         boolean shouldDashboardLocal = false;
         boolean shouldDashboardServer = false;
-        ArrayList<KlocworkIssue> localIssues = new ArrayList<>();
-        ArrayList<KlocworkIssue> serverIssues = new ArrayList<>();
         if (gatewayConfig.getEnableServerGateway()) {
             logger.logMessage("Performing Klocwork Server Gateway");
             // check env vars are set, otherwise this throws AbortException
             KlocworkUtil.validateServerConfigs(envVars);
-            for (KlocworkGatewayServerConfig pfConfig : gatewayConfig.getGatewayServerConfigs()) {
-                String request = KlocworkUtil.createKlocworkAPIRequest(
-                    "search", pfConfig.getQuery(), envVars);
-                logger.logMessage("Condition Name : " + pfConfig.getConditionName());
-                logger.logMessage("Using query: " + request);
-
-                JSONArray response = KlocworkUtil.getJSONRespose(request, envVars, launcher);
-
-                logger.logMessage("Number of issues returned : " + Integer.toString(response.size()));
-                logger.logMessage("Configured Threshold : " + pfConfig.getThreshold());
-                if (response.size() >= Integer.parseInt(pfConfig.getThreshold())) {
-                    logger.logMessage("Threshold exceeded. Marking build as failed.");
-                    build.setResult(pfConfig.getResultValue());
-                    if(pfConfig.getStopBuild()){
+            FilePath issueListing = null;
+            Writer listingWriter = null;
+            try {
+                if (gatewayConfig.isSummaryConsoleOutput()) {
+                    issueListing = workspace.child(KlocworkConstants.DEFAULT_SERVER_ISSUE_LISTING_FILE);
+                    listingWriter = KlocworkUtil.createGzipWriter(issueListing);
+                }
+                List<KlocworkGatewayServerConfig> pfConfigs = gatewayConfig.getGatewayServerConfigs();
+                int[][] newIssueIds = getNewIssueIds(build, pfConfigs, logger);
+                for (int c = 0; c < pfConfigs.size(); c++) {
+                    if (newIssueIds[c] != null && !needsSearch(pfConfigs.get(c), newIssueIds[c]) &&
+                            checkNewIssues(build, pfConfigs.get(c), newIssueIds[c], logger)) {
                         stopBuild = true;
                     }
                 }
-                for (int i = 0; i < response.size(); i++) {
-                    JSONObject jObj = response.getJSONObject(i);
-                    if(pfConfig.isEnableHTMLReporting()) {
-                        shouldDashboardServer = true;
-                        if (!isIssueInList(jObj.getString("id"), serverIssues)) {
-                            String line = "";
-                            if (jObj.containsKey("line")) {
-                                line = jObj.getString("line");
-                            }
-                            serverIssues.add(new KlocworkIssue(jObj.getString("id"),
-                                    jObj.getString("code"), jObj.getString("message"), jObj.getString("file"),
-                                    line, jObj.getString("severity"), jObj.getString("status")
-                            ));
-                        }
-                    }
-                    else {
-                        logger.logMessage(jObj.toString());
+                if (checkServerConditions(build, pfConfigs, newIssueIds, envVars, launcher, serverIssues,
+                        listingWriter, issueListing, listener, logger)) {
+                    stopBuild = true;
+                }
+                // only conditions with HTML reporting add to the server issues
+                shouldDashboardServer = serverIssues.size() > 0;
+            } catch (IOException | InterruptedException ex) {
+                throw new AbortException(ex.getMessage());
+            } finally {
+                KlocworkGatewayPrefetch.release(build);
+                if (listingWriter != null) {
+                    try {
+                        listingWriter.close();
+                    } catch (IOException ex) {
+                        logger.logMessage("WARNING: failed to write " + issueListing.getName() +
+                            ": " + ex.getMessage());
                     }
                 }
             }
+            if (issueListing != null) {
+                KlocworkUtil.archiveArtifact(build, issueListing, launcher, listener);
+            }
         }
         if (gatewayConfig.getEnableCiGateway()) {
 			logger.logMessage("Performing Klocwork Ci Gateway");
 			if (gatewayConfig.getGatewayCiConfigs() != null) {
                 for (KlocworkGatewayCiConfig ciConfig : gatewayConfig.getGatewayCiConfigs()) {
-                    ArrayList<KlocworkIssue> qgate_issues = new ArrayList<>();
                     logger.logMessage("Checking ci gateway: " + ciConfig.getName());
                     String xmlReport = envVars.expand(KlocworkUtil.getDefaultKwcheckReportFile(
                             ciConfig.getReportFile()));
@@ -155,18 +184,11 @@ public class KlocworkGatewayPublisher extends Publisher implements SimpleBuildSt
                         int qualityGateIssues;
                         if (ciConfig.isEnableHTMLReporting()) {
                             shouldDashboardLocal = true;
-                            qgate_issues = launcher.getChannel().call(
-                                    new KlocworkXMLReportParserIssueList(workspace.getRemote(), xmlReport, ciConfig.getEnabledSeverites(), ciConfig.getEnabledStatuses()));
-                            qualityGateIssues = qgate_issues.size();
+                            qualityGateIssues = readLocalIssues(workspace, launcher, xmlReport, ciConfig, localIssues);
                         } else {
                             qualityGateIssues = launcher.getChannel().call(
                                     new KlocworkXMLReportParser(workspace.getRemote(), xmlReport, ciConfig.getEnabledSeverites(), ciConfig.getEnabledStatuses()));
                         }
-                        for (KlocworkIssue qgate_issue : qgate_issues) {
-                            if (!isIssueInList(qgate_issue.getId(), localIssues)) {
-                                localIssues.add(qgate_issue);
-                            }
-                        }
                         logger.logMessage("Total Ci Issues : " +
                                 Integer.toString(qualityGateIssues));
                         logger.logMessage("Configured Threshold : " +
@@ -194,7 +216,21 @@ public class KlocworkGatewayPublisher extends Publisher implements SimpleBuildSt
         }
 
         if(shouldDashboardLocal || shouldDashboardServer){
-            build.addAction(new KlocworkDashboard(localIssues, serverIssues, shouldDashboardLocal, shouldDashboardServer));
+            try {
+                localIssues.finish();
+                serverIssues.finish();
+                if (localIssues.isSpilled() || serverIssues.isSpilled()) {
+                    logger.logMessage("Dashboard issues exceeded the issue heap budget, written to disk " +
+                            Integer.toString(localIssues.getSpillCount() + serverIssues.getSpillCount()) + " times");
+                }
+                logger.logMessage("Dashboard issues: " + Integer.toString(localIssues.size()) + " local, " +
+                        Integer.toString(serverIssues.size()) + " server, index overhead ~" +
+                        Long.toString((localIssues.getIndexOverhead() + serverIssues.getIndexOverhead()) / 1024) + " KB");
+                build.addAction(new KlocworkDashboard(build, localIssues, serverIssues,
+                        shouldDashboardLocal, shouldDashboardServer));
+            } catch (IOException | UncheckedIOException ex) {
+                throw new AbortException("Unable to save the Klocwork dashboard: " + ex.getMessage());
+            }
         }
 
         if(stopBuild){
@@ -202,15 +238,317 @@ public class KlocworkGatewayPublisher extends Publisher implements SimpleBuildSt
         }
     }
 
-    private boolean isIssueInList(String issue_id, ArrayList<KlocworkIssue> issues) {
-        for(KlocworkIssue issue : issues) {
-            if (issue.getId().equals(issue_id)) {
-                return true;
+    /*
+     * Adds the enabled issues of a kwcheck report to localIssues, returns
+     * their number. The agent writes the issues to a temporary file as it
+     * parses the report, which is read back here one issue at a time
+     */
+    private int readLocalIssues(FilePath workspace, Launcher launcher, String xmlReport,
+                                KlocworkGatewayCiConfig ciConfig, KlocworkIssueSet localIssues)
+                                throws IOException, InterruptedException {
+        FilePath issueFile = workspace.createTempFile("klocwork-issues", ".bin.gz");
+        try {
+            int count = launcher.getChannel().call(new KlocworkXMLReportIssueWriter(workspace.getRemote(),
+                    xmlReport, issueFile.getRemote(), ciConfig.getEnabledSeverites(), ciConfig.getEnabledStatuses()));
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new GZIPInputStream(issueFile.read())))) {
+                while (in.readBoolean()) {
+                    localIssues.add(KlocworkIssue.read(in));
+                }
+            }
+            return count;
+        } finally {
+            issueFile.delete();
+        }
+    }
+
+    /*
+     * Returns, for each condition counting new issues, the ids of the issues
+     * found by the server load step of this build but not of the previous
+     * successful build. Null entries are conditions counting all issues their
+     * search returns, including new issue conditions when either build has no
+     * stored ids
+     */
+    private int[][] getNewIssueIds(Run<?, ?> build, List<KlocworkGatewayServerConfig> pfConfigs,
+                                   KlocworkLogger logger) {
+        int[][] newIssueIds = new int[pfConfigs.size()][];
+        int[] newIds = null;
+        boolean loaded = false;
+        for (int i = 0; i < pfConfigs.size(); i++) {
+            if (!pfConfigs.get(i).isNewSincePreviousBuild()) {
+                continue;
+            }
+            if (!loaded) {
+                loaded = true;
+                newIds = loadNewIssueIds(build, logger);
             }
+            newIssueIds[i] = newIds;
+        }
+        return newIssueIds;
+    }
+
+    private int[] loadNewIssueIds(Run<?, ?> build, KlocworkLogger logger) {
+        Run<?, ?> previousBuild = build.getPreviousSuccessfulBuild();
+        if (previousBuild == null) {
+            logger.logMessage("No previous successful build to compare issues with, using the query");
+            return null;
+        }
+        try {
+            KlocworkIssueIdSet current = KlocworkIssueIdSet.load(
+                    new File(build.getRootDir(), KlocworkConstants.SERVER_ISSUE_IDS_FILE));
+            KlocworkIssueIdSet previous = KlocworkIssueIdSet.load(
+                    new File(previousBuild.getRootDir(), KlocworkConstants.SERVER_ISSUE_IDS_FILE));
+            if (current == null || previous == null) {
+                logger.logMessage("No issue ids stored by the server load step of " +
+                        ((current == null) ? "this build" : previousBuild.getDisplayName()) +
+                        ", using the query");
+                return null;
+            }
+            return current.difference(previous);
+        } catch (IOException ex) {
+            logger.logMessage("WARNING: failed to read issue ids, using the query: " + ex.getMessage());
+            return null;
+        }
+    }
+
+    /*
+     * Whether a condition needs a search. A condition counting new issues with
+     * a query still searches, and only counts the returned issues that are new
+     */
+    private static boolean needsSearch(KlocworkGatewayServerConfig pfConfig, int[] newIds) {
+        return newIds == null || !StringUtils.isBlank(pfConfig.getQuery());
+    }
+
+    /*
+     * Checks a condition counting all issues new since the previous
+     * successful build, returns whether it stops the build
+     */
+    private boolean checkNewIssues(Run<?, ?> build, KlocworkGatewayServerConfig pfConfig, int[] newIds,
+                                   KlocworkLogger logger) {
+        logger.logMessage("Condition Name : " + pfConfig.getConditionName());
+        logger.logMessage("Number of issues new since previous successful build : " +
+                Integer.toString(newIds.length));
+        if (newIds.length > 0) {
+            int limit = Math.min(newIds.length, gatewayConfig.getConsoleIssueLimitValue());
+            logger.logMessage("New issue ids : " + Arrays.toString(Arrays.copyOf(newIds, limit)) +
+                    ((limit < newIds.length) ? " and " + Integer.toString(newIds.length - limit) + " more" : ""));
+        }
+        logger.logMessage("Configured Threshold : " + pfConfig.getThreshold());
+        if (newIds.length >= Integer.parseInt(pfConfig.getThreshold())) {
+            logger.logMessage("Threshold exceeded. Marking build as failed.");
+            build.setResult(pfConfig.getResultValue());
+            return pfConfig.getStopBuild();
         }
         return false;
     }
 
+    /*
+     * Runs the searches for the server conditions and checks each condition
+     * as soon as its issues are known, so that only one search result is held
+     * at a time. Conditions whose queries only differ in severity and status
+     * filters share one search of their common base query, which is filtered
+     * locally for each of them. The other conditions run their own search.
+     * Returns whether a condition stops the build
+     */
+    private boolean checkServerConditions(Run<?, ?> build, List<KlocworkGatewayServerConfig> pfConfigs,
+                                          int[][] newIssueIds, EnvVars envVars, Launcher launcher,
+                                          KlocworkIssueSet serverIssues, Writer listingWriter,
+                                          FilePath issueListing, TaskListener listener, KlocworkLogger logger)
+                                          throws IOException, InterruptedException {
+        boolean stopBuild = false;
+        List<KlocworkQueryFilter> filters = new ArrayList<>();
+        List<Integer> ownSearches = new ArrayList<>();
+        for (int i = 0; i < pfConfigs.size(); i++) {
+            // conditions counting all new issues locally need no search
+            if (needsSearch(pfConfigs.get(i), newIssueIds[i])) {
+                filters.add(KlocworkQueryFilter.compile(pfConfigs.get(i).getQuery()));
+                ownSearches.add(i);
+            } else {
+                filters.add(null);
+            }
+        }
+        int requests = 0;
+        for (Map.Entry<String, List<Integer>> group : KlocworkQueryFilter.groupByBaseQuery(filters).entrySet()) {
+            String request = KlocworkUtil.createKlocworkAPIRequest("search", group.getKey(), envVars);
+            List<String> conditionNames = new ArrayList<>();
+            for (int i : group.getValue()) {
+                conditionNames.add(pfConfigs.get(i).getConditionName());
+            }
+            logger.logMessage("Using shared query: " + request + " for conditions " +
+                    String.join(", ", conditionNames));
+            JSONArray response = search(build, request, envVars, launcher, logger);
+            requests++;
+            for (int i : group.getValue()) {
+                JSONArray issues = filterIssues(filters.get(i), response);
+                if (issues == null) {
+                    // an issue lacks a field the filter needs, the condition
+                    // runs its own search instead
+                    continue;
+                }
+                ownSearches.remove(Integer.valueOf(i));
+                if (checkServerCondition(build, pfConfigs.get(i), newIssues(issues, newIssueIds[i], logger),
+                        serverIssues, listingWriter, issueListing, listener, logger)) {
+                    stopBuild = true;
+                }
+            }
+        }
+        for (int i : ownSearches) {
+            String request = KlocworkUtil.createKlocworkAPIRequest(
+                "search", pfConfigs.get(i).getQuery(), envVars);
+            logger.logMessage("Using query: " + request);
+            JSONArray response = search(build, request, envVars, launcher, logger);
+            requests++;
+            if (checkServerCondition(build, pfConfigs.get(i), newIssues(response, newIssueIds[i], logger),
+                    serverIssues, listingWriter, issueListing, listener, logger)) {
+                stopBuild = true;
+            }
+        }
+        if (requests < pfConfigs.size()) {
+            logger.logMessage("Server requests: " + Integer.toString(requests) + " for " +
+                    Integer.toString(pfConfigs.size()) + " conditions, " +
+                    Integer.toString(pfConfigs.size() - requests) + " round trips saved");
+        }
+        return stopBuild;
+    }
+
+    /*
+     * Returns the issues of a shared search matching the filter, or null if
+     * an issue lacks a field the filter needs
+     */
+    private static JSONArray filterIssues(KlocworkQueryFilter filter, JSONArray response) {
+        JSONArray issues = new JSONArray();
+        for (int j = 0; j < response.size(); j++) {
+            JSONObject issue = response.getJSONObject(j);
+            Boolean match = filter.matches(issue);
+            if (match == null) {
+                return null;
+            }
+            if (match) {
+                issues.add(issue);
+            }
+        }
+        return issues;
+    }
+
+    /*
+     * Returns the issues whose ids are in newIds, or all issues if newIds is
+     * null
+     */
+    private static JSONArray newIssues(JSONArray issues, int[] newIds, KlocworkLogger logger) {
+        if (newIds == null) {
+            return issues;
+        }
+        JSONArray newIssues = new JSONArray();
+        for (int j = 0; j < issues.size(); j++) {
+            JSONObject issue = issues.getJSONObject(j);
+            if (Arrays.binarySearch(newIds, issue.optInt("id", -1)) >= 0) {
+                newIssues.add(issue);
+            }
+        }
+        logger.logMessage("Counting the " + Integer.toString(newIssues.size()) + " of " +
+                Integer.toString(issues.size()) + " issues new since previous successful build");
+        return newIssues;
+    }
+
+    /*
+     * Checks a condition against the issues its search returned, adding them
+     * to the dashboard or the listing, returns whether it stops the build
+     */
+    private boolean checkServerCondition(Run<?, ?> build, KlocworkGatewayServerConfig pfConfig, JSONArray response,
+                                         KlocworkIssueSet serverIssues, Writer listingWriter, FilePath issueListing,
+                                         TaskListener listener, KlocworkLogger logger) throws IOException {
+        boolean stopBuild = false;
+        logger.logMessage("Condition Name : " + pfConfig.getConditionName());
+        logger.logMessage("Number of issues returned : " + Integer.toString(response.size()));
+        logger.logMessage("Configured Threshold : " + pfConfig.getThreshold());
+        if (response.size() >= Integer.parseInt(pfConfig.getThreshold())) {
+            logger.logMessage("Threshold exceeded. Marking build as failed.");
+            build.setResult(pfConfig.getResultValue());
+            if(pfConfig.getStopBuild()){
+                stopBuild = true;
+            }
+        }
+        KlocworkConsoleListing listing = (listingWriter == null) ? null :
+            new KlocworkConsoleListing(listener.getLogger(),
+                gatewayConfig.getConsoleIssueLimitValue(), listingWriter);
+        for (int i = 0; i < response.size(); i++) {
+            JSONObject jObj = response.getJSONObject(i);
+            if(pfConfig.isEnableHTMLReporting()) {
+                if (!serverIssues.contains(jObj.getString("id"))) {
+                    String line = "";
+                    if (jObj.containsKey("line")) {
+                        line = jObj.getString("line");
+                    }
+                    serverIssues.add(new KlocworkIssue(jObj.getString("id"),
+                            jObj.getString("code"), jObj.getString("message"), jObj.getString("file"),
+                            line, jObj.getString("severity"), jObj.getString("status")
+                    ));
+                }
+            }
+            else if (listing != null) {
+                listing.addIssue(jObj.optString("severity", null), jObj.toString());
+            }
+            else {
+                logger.logMessage(jObj.toString());
+            }
+        }
+        if (listing != null) {
+            listing.printSummary(issueListing.getName());
+        }
+        return stopBuild;
+    }
+
+    /*
+     * Returns the search requests checkServerConditions would normally send, so
+     * that they can be started before the build reaches the gateway
+     */
+    public List<String> getServerRequests(EnvVars envVars) throws AbortException {
+        List<String> requests = new ArrayList<>();
+        List<KlocworkGatewayServerConfig> pfConfigs = gatewayConfig.getGatewayServerConfigs();
+        if (!gatewayConfig.getEnableServerGateway() || pfConfigs == null) {
+            return requests;
+        }
+        List<KlocworkQueryFilter> filters = new ArrayList<>();
+        // new issue conditions without a query may need no search, which is
+        // only known once the issue ids of the load step are stored
+        for (KlocworkGatewayServerConfig pfConfig : pfConfigs) {
+            filters.add(isLocalOnly(pfConfig) ? null : KlocworkQueryFilter.compile(pfConfig.getQuery()));
+        }
+        Map<String, List<Integer>> groups = KlocworkQueryFilter.groupByBaseQuery(filters);
+        List<Integer> grouped = new ArrayList<>();
+        for (Map.Entry<String, List<Integer>> group : groups.entrySet()) {
+            requests.add(KlocworkUtil.createKlocworkAPIRequest("search", group.getKey(), envVars));
+            grouped.addAll(group.getValue());
+        }
+        for (int i = 0; i < pfConfigs.size(); i++) {
+            if (!grouped.contains(i) && !isLocalOnly(pfConfigs.get(i))) {
+                requests.add(KlocworkUtil.createKlocworkAPIRequest("search", pfConfigs.get(i).getQuery(), envVars));
+            }
+        }
+        return requests;
+    }
+
+    private static boolean isLocalOnly(KlocworkGatewayServerConfig pfConfig) {
+        return pfConfig.isNewSincePreviousBuild() && StringUtils.isBlank(pfConfig.getQuery());
+    }
+
+    /*
+     * Returns the result of a search started with the build if there is one,
+     * otherwise searches now
+     */
+    private JSONArray search(Run<?, ?> build, String request, EnvVars envVars, Launcher launcher,
+                             KlocworkLogger logger) throws AbortException, InterruptedException {
+        KlocworkGatewayPrefetch prefetch = KlocworkGatewayPrefetch.get(build);
+        if (prefetch != null) {
+            JSONArray response = prefetch.take(request, KlocworkConstants.GATEWAY_PREFETCH_TIMEOUT, logger);
+            if (response != null) {
+                logger.logMessage("Using the result of the search started with the build");
+                return response;
+            }
+        }
+        return KlocworkUtil.getJSONRespose(request, envVars, launcher);
+    }
+
     public BuildStepMonitor getRequiredMonitorService() {
         return BuildStepMonitor.NONE;
     }
@@ -3,10 +3,15 @@ package com.emenda.klocwork;
 import hudson.model.*;
 import org.json.*;
 
+import com.emenda.klocwork.util.KlocworkDownsampler;
+import com.emenda.klocwork.util.KlocworkTrendIndex;
 import com.emenda.klocwork.util.KlocworkUtil;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class KlocworkProjectAction implements Action {
 
@@ -45,6 +50,14 @@ public class KlocworkProjectAction implements Action {
     }
 
     public String getChartData() {
+        return getChartData(KlocworkConstants.MAX_CHART_HISTORY, KlocworkConstants.MAX_CHART_POINTS);
+    }
+
+    /*
+     * Returns the chart of the last history builds, or of all builds if
+     * history is 0, downsampled to at most maxPoints builds (0 for no limit)
+     */
+    public String getChartData(int history, int maxPoints) {
         JSONObject data = new JSONObject();
 
         // create JSON object to contain data...
@@ -56,15 +69,27 @@ public class KlocworkProjectAction implements Action {
         JSONObject errorIssuedata = new JSONObject();
         JSONObject warningIssuedata = new JSONObject();
         JSONObject reviewIssuedata = new JSONObject();
-        for (Run<?, ?> build = getJob().getFirstBuild(); build != null; build = build.getNextBuild()) {
-            KlocworkBuildAction kwBuildAction = build.getAction(KlocworkBuildAction.class);
-            if (kwBuildAction != null) {
-                labels.add(kwBuildAction.getBuildName());
-                criticalIssuedata.append("data", kwBuildAction.getCriticalCount());
-                errorIssuedata.append("data", kwBuildAction.getErrorCount());
-                warningIssuedata.append("data", kwBuildAction.getWarningCount());
-                reviewIssuedata.append("data", kwBuildAction.getReviewCount());
-            }
+        // counts come from the trend index, so no build is loaded
+        List<KlocworkTrendIndex.Entry> entries = new ArrayList<KlocworkTrendIndex.Entry>();
+        try {
+            entries = KlocworkTrendIndex.readLast(getJob(), (history > 0) ? history : Integer.MAX_VALUE);
+        } catch (IOException ex) {
+            Logger.getLogger(KlocworkProjectAction.class.getName()).log(Level.WARNING,
+                "Unable to read the Klocwork trend index of " + getJob().getFullName(), ex);
+        }
+        double[] totals = new double[entries.size()];
+        for (int i = 0; i < totals.length; i++) {
+            KlocworkTrendIndex.Entry entry = entries.get(i);
+            totals[i] = entry.getCriticalCount() + entry.getErrorCount() +
+                entry.getWarningCount() + entry.getReviewCount();
+        }
+        for (int i : KlocworkDownsampler.select(totals, maxPoints)) {
+            KlocworkTrendIndex.Entry entry = entries.get(i);
+            labels.add(entry.getBuildName());
+            criticalIssuedata.append("data", entry.getCriticalCount());
+            errorIssuedata.append("data", entry.getErrorCount());
+            warningIssuedata.append("data", entry.getWarningCount());
+            reviewIssuedata.append("data", entry.getReviewCount());
         }
 
         criticalIssuedata.put("label", KlocworkConstants.KLOCWORK_ISSUE_CRITICAL);
@@ -2,6 +2,7 @@ package com.emenda.klocwork;
 
 import com.emenda.klocwork.config.KlocworkReportConfig;
 import com.emenda.klocwork.config.KlocworkServerLoadConfig;
+import com.emenda.klocwork.util.KlocworkIssueIdSet;
 import com.emenda.klocwork.util.KlocworkUtil;
 
 import jenkins.tasks.SimpleBuildStep;
@@ -32,6 +33,7 @@ import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.StaplerRequest;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.StringReader;
 import java.lang.InterruptedException;
@@ -112,25 +114,33 @@ public class KlocworkServerLoadBuilder extends Builder implements SimpleBuildSte
                 workspace, envVars,
                 serverConfig.getVersionCmd(), true);
 
-        KlocworkUtil.executeCommand(launcher, listener,
-                workspace, envVars,
-                serverConfig.getKwadminLoadCmd(envVars, workspace));
-
-        if(reportConfig != null && reportConfig.isDisplayChart()) {
-            createBuildAction(logger, build, envVars, launcher);
+        try {
+            KlocworkUtil.executeCommand(launcher, listener,
+                    workspace, envVars,
+                    serverConfig.getKwadminLoadCmd(envVars, workspace));
+        } finally {
+            // gateway searches started with the build do not include this
+            // load, even one that failed part way
+            KlocworkGatewayPrefetch.discard(build, logger, "load");
         }
 
+        // the issue ids are kept for the gateway even without the chart
+        recordIssues(logger, build, envVars, launcher);
+
     }
 
-    private void createBuildAction(KlocworkLogger logger, Run<?, ?> build, EnvVars envVars,
+    private void recordIssues(KlocworkLogger logger, Run<?, ?> build, EnvVars envVars,
     Launcher launcher) throws AbortException {
-        String request = KlocworkUtil.createKlocworkAPIRequest("search", reportConfig.getQuery(), envVars);
+        String query = (reportConfig != null) ? reportConfig.getQuery() : "";
+        String request = KlocworkUtil.createKlocworkAPIRequest("search", query, envVars);
         logger.logMessage("Using query: " + request);
         JSONArray response = KlocworkUtil.getJSONRespose(request, envVars, launcher);
         logger.logMessage("Number of issues returned : " + Integer.toString(response.size()));
 
         Map<String, Integer> severityMap = new HashMap<String,Integer>();
+        List<String> issueIds = new ArrayList<String>(response.size());
         for (int i = 0; i < response.size(); i++) {
+            issueIds.add(response.getJSONObject(i).optString("id", ""));
             String severity = response.getJSONObject(i).getString("severity");
             if (StringUtils.isEmpty(severity)) {
                 logger.logMessage(String.format("WARNING: found empty severity %s", severity));
@@ -140,7 +150,17 @@ public class KlocworkServerLoadBuilder extends Builder implements SimpleBuildSte
             }
         }
 
-        build.addAction(new KlocworkBuildAction(build, severityMap, envVars, serverConfig.getBuildName(), reportConfig));
+        // later builds find their new issues by comparing with these ids
+        try {
+            KlocworkIssueIdSet.fromIds(issueIds).save(
+                new File(build.getRootDir(), KlocworkConstants.SERVER_ISSUE_IDS_FILE));
+        } catch (IOException ex) {
+            logger.logMessage("WARNING: failed to save issue ids: " + ex.getMessage());
+        }
+
+        if(reportConfig != null && reportConfig.isDisplayChart()) {
+            build.addAction(new KlocworkBuildAction(build, severityMap, envVars, serverConfig.getBuildName(), reportConfig));
+        }
     }
 
     @Override
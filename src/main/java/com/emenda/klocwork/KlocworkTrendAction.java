@@ -0,0 +1,66 @@
+package com.emenda.klocwork;
+
+import com.emenda.klocwork.util.KlocworkTrendIndex;
+import hudson.model.Action;
+import hudson.model.Job;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import java.io.IOException;
+import java.util.List;
+
+/*
+ * Serves the trend chart data of a job at job/klocworkTrend/chartData, so the
+ * job page can load the chart after it is shown. The history parameter sets
+ * the number of builds (0 for all) and maxPoints the points they are
+ * downsampled to. Responses carry an ETag and
+ * Last-Modified taken from the trend index, and requests made since the last
+ * Klocwork build are answered with 304 Not Modified.
+ *
+ * KlocworkProjectAction links to the Klocwork server and has no URL of its
+ * own in Jenkins, hence this separate action without a side panel link.
+ */
+public class KlocworkTrendAction implements Action {
+
+    private final Job<?, ?> job;
+
+    public KlocworkTrendAction(Job<?, ?> job) {
+        this.job = job;
+    }
+
+    public String getIconFileName() {
+        return null;
+    }
+
+    public String getDisplayName() {
+        return null;
+    }
+
+    public String getUrlName() {
+        return "klocworkTrend";
+    }
+
+    public void doChartData(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        List<KlocworkTrendIndex.Entry> latest = KlocworkTrendIndex.readLast(job, 1);
+        long lastModified = KlocworkTrendIndex.getLastModified(job);
+        String etag = "\"" + (latest.isEmpty() ? "0" : Integer.toString(latest.get(0).getNumber())) +
+            "-" + Long.toString(lastModified) + "\"";
+
+        rsp.setHeader("ETag", etag);
+        rsp.setDateHeader("Last-Modified", lastModified);
+        // cached, but checked with the controller on every use
+        rsp.setHeader("Cache-Control", "private, no-cache");
+        String ifNoneMatch = req.getHeader("If-None-Match");
+        long ifModifiedSince = req.getDateHeader("If-Modified-Since");
+        if (ifNoneMatch != null ? ifNoneMatch.equals(etag) :
+                ifModifiedSince >= 0 && ifModifiedSince / 1000 >= lastModified / 1000) {
+            rsp.setStatus(StaplerResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        rsp.setContentType("application/json;charset=UTF-8");
+        rsp.getWriter().write(new KlocworkProjectAction(job).getChartData(
+            NumberUtils.toInt(req.getParameter("history"), KlocworkConstants.MAX_CHART_HISTORY),
+            NumberUtils.toInt(req.getParameter("maxPoints"), KlocworkConstants.MAX_CHART_POINTS)));
+    }
+}
@@ -0,0 +1,48 @@
+package com.emenda.klocwork;
+
+import com.emenda.klocwork.util.KlocworkTrendIndex;
+import hudson.Extension;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ * Keeps the trend index of a job (see KlocworkTrendIndex) up to date as
+ * builds with Klocwork results complete or are deleted.
+ */
+@Extension
+public class KlocworkTrendListener extends RunListener<Run<?, ?>> {
+
+    private static final Logger LOGGER = Logger.getLogger(KlocworkTrendListener.class.getName());
+
+    @Override
+    public void onCompleted(Run<?, ?> build, TaskListener listener) {
+        KlocworkBuildAction action = build.getAction(KlocworkBuildAction.class);
+        if (action == null) {
+            return;
+        }
+        try {
+            KlocworkTrendIndex.append(build.getParent(), new KlocworkTrendIndex.Entry(build, action));
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Unable to update the Klocwork trend index of " +
+                build.getExternalizableId(), ex);
+        }
+    }
+
+    @Override
+    public void onDeleted(Run<?, ?> build) {
+        if (build.getAction(KlocworkBuildAction.class) == null) {
+            return;
+        }
+        try {
+            KlocworkTrendIndex.remove(build.getParent(), build.getNumber());
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Unable to update the Klocwork trend index of " +
+                build.getExternalizableId(), ex);
+        }
+    }
+}
@@ -58,8 +58,14 @@ public class KlocworkXSyncBuilder extends Builder implements SimpleBuildStep {
         KlocworkUtil.executeCommand(launcher, listener,
                 workspace, envVars,
                 syncConfig.getVersionCmd());
-        KlocworkUtil.executeCommand(launcher, listener,
-                 workspace, envVars, syncConfig.getxsyncCmd(envVars, launcher));
+        try {
+            KlocworkUtil.executeCommand(launcher, listener,
+                     workspace, envVars, syncConfig.getxsyncCmd(envVars, launcher));
+        } finally {
+            // kwxsync changes issue statuses on the server, which gateway
+            // searches started with the build do not include
+            KlocworkGatewayPrefetch.discard(build, logger, "cross-project sync");
+        }
 
     }
 
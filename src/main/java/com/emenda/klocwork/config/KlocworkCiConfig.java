@@ -2,7 +2,13 @@
 package com.emenda.klocwork.config;
 
 import com.emenda.klocwork.KlocworkConstants;
+import com.emenda.klocwork.util.KlocworkAnalysisReuse;
 import com.emenda.klocwork.util.KlocworkBuildSpecParser;
+import com.emenda.klocwork.util.KlocworkBuildSpecSharder;
+import com.emenda.klocwork.util.KlocworkGitChangeDetector;
+import com.emenda.klocwork.util.KlocworkProjectSnapshot;
+import com.emenda.klocwork.util.KlocworkResultCache;
+import com.emenda.klocwork.util.KlocworkToolDetector;
 import com.emenda.klocwork.util.KlocworkUtil;
 import hudson.*;
 import hudson.init.InitMilestone;
@@ -13,10 +19,13 @@ import hudson.model.Items;
 import hudson.model.Run;
 import hudson.util.ArgumentListBuilder;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.List;
 
 public class KlocworkCiConfig extends AbstractDescribableImpl<KlocworkCiConfig> {
@@ -28,7 +37,17 @@ public class KlocworkCiConfig extends AbstractDescribableImpl<KlocworkCiConfig>
     private final String additionalOpts;
     private final boolean incrementalAnalysis;
     private final KlocworkDiffAnalysisConfig diffAnalysisConfig;
+    // tool detected by older versions of the builder, only kept so that
+    // existing configurations still load. The tool now lives in the build
     private String ciTool;
+    private boolean summaryConsoleOutput;
+    private String consoleIssueLimit;
+    private String shardCount;
+    private String shardIndex;
+    private boolean useProjectSnapshot;
+    private boolean isolateProjectDir;
+    private boolean useResultCache;
+    private boolean reuseUnchangedAnalysis;
 
     @DataBoundConstructor
     public KlocworkCiConfig(String buildSpec, String projectDir, boolean cleanupProject, String reportFile, String additionalOpts,
@@ -43,43 +62,29 @@ public class KlocworkCiConfig extends AbstractDescribableImpl<KlocworkCiConfig>
         this.ciTool = ciTool;
     }
 
-    public ArgumentListBuilder getVersionCiAgentCmd()
-                                        throws IOException, InterruptedException {
-        ArgumentListBuilder versionCmd = new ArgumentListBuilder("kwciagent");
-        versionCmd.add("--version");
-        return versionCmd;
-    }
-
-    public ArgumentListBuilder getVersionKwCheckCmd()
-            throws IOException, InterruptedException {
-        ArgumentListBuilder versionCmd = new ArgumentListBuilder("kwcheck");
-        versionCmd.add("--version");
-        return versionCmd;
-    }
-
-    public ArgumentListBuilder getCiToolCreateCmd(EnvVars envVars, FilePath workspace)
+    public ArgumentListBuilder getCiToolCreateCmd(String ciTool, EnvVars envVars, FilePath projectRoot)
                                         throws IOException, InterruptedException {
 
-        validateParentProjectDir(getKwlpDir(workspace, envVars).getParent());
+        validateParentProjectDir(getKwlpDir(projectRoot).getParent());
 
         ArgumentListBuilder kwcheckCreateCmd = new ArgumentListBuilder(ciTool, "create");
         String projectUrl = KlocworkUtil.getKlocworkProjectUrl(envVars);
         if (!StringUtils.isEmpty(projectUrl)) {
             kwcheckCreateCmd.add("--url", projectUrl);
         }
-        kwcheckCreateCmd.add("--project-dir", getKwlpDir(workspace, envVars).getRemote());
-        kwcheckCreateCmd.add("--settings-dir", getKwpsDir(workspace, envVars).getRemote());
+        kwcheckCreateCmd.add("--project-dir", getKwlpDir(projectRoot).getRemote());
+        kwcheckCreateCmd.add("--settings-dir", getKwpsDir(projectRoot).getRemote());
         kwcheckCreateCmd.add("--build-spec", envVars.expand(KlocworkUtil.getDefaultBuildSpec(buildSpec)));
         return kwcheckCreateCmd;
     }
 
-    public ArgumentListBuilder getCiToolSetCmd(EnvVars envVars, FilePath workspace)
+    public ArgumentListBuilder getCiToolSetCmd(String ciTool, EnvVars envVars, FilePath projectRoot)
                                         throws IOException, InterruptedException {
 
-        validateParentProjectDir(getKwlpDir(workspace, envVars).getParent());
+        validateParentProjectDir(getKwlpDir(projectRoot).getParent());
 
         ArgumentListBuilder kwcheckSetCmd = new ArgumentListBuilder(ciTool, "set");
-        kwcheckSetCmd.add("--project-dir", getKwlpDir(workspace, envVars).getRemote());
+        kwcheckSetCmd.add("--project-dir", getKwlpDir(projectRoot).getRemote());
         String serverUrl = envVars.get(KlocworkConstants.KLOCWORK_URL);
         if (!StringUtils.isEmpty(serverUrl)) {
             URL url = new URL(serverUrl);
@@ -90,12 +95,12 @@ public class KlocworkCiConfig extends AbstractDescribableImpl<KlocworkCiConfig>
         return kwcheckSetCmd;
     }
 
-    public ArgumentListBuilder getCiToolListCmd(EnvVars envVars, FilePath workspace,
-                                                String diffList)
+    public ArgumentListBuilder getCiToolListCmd(String ciTool, EnvVars envVars, FilePath projectRoot,
+                                                List<String> diffList)
                                         throws IOException, InterruptedException {
         ArgumentListBuilder kwcheckRunCmd =
             new ArgumentListBuilder(ciTool, "list");
-        kwcheckRunCmd.add("--project-dir", getKwlpDir(workspace, envVars).getRemote());
+        kwcheckRunCmd.add("--project-dir", getKwlpDir(projectRoot).getRemote());
         String licenseHost = envVars.get(KlocworkConstants.KLOCWORK_LICENSE_HOST);
         if (!StringUtils.isEmpty(licenseHost)) {
             kwcheckRunCmd.add("--license-host", licenseHost);
@@ -112,18 +117,21 @@ public class KlocworkCiConfig extends AbstractDescribableImpl<KlocworkCiConfig>
             kwcheckRunCmd.addTokenized(envVars.expand(additionalOpts));
         }
 
-        // add list of changed files to end of kwcheck run command
-        kwcheckRunCmd.addTokenized(diffList);
+        // add list of changed files to end of kwcheck run command, one
+        // argument each as paths may contain spaces
+        for (String file : diffList) {
+            kwcheckRunCmd.add(file);
+        }
 
         return kwcheckRunCmd;
     }
 
-    public ArgumentListBuilder getCiToolRunCmd(EnvVars envVars, FilePath workspace,
-                                               String diffList)
+    public ArgumentListBuilder getCiToolRunCmd(String ciTool, EnvVars envVars, FilePath projectRoot,
+                                               List<String> diffList)
                                         throws IOException, InterruptedException {
         ArgumentListBuilder kwcheckRunCmd =
             new ArgumentListBuilder(ciTool, "run");
-        kwcheckRunCmd.add("--project-dir", getKwlpDir(workspace, envVars).getRemote());
+        kwcheckRunCmd.add("--project-dir", getKwlpDir(projectRoot).getRemote());
 
         if (!StringUtils.isEmpty(envVars.get(KlocworkConstants.KLOCWORK_LICENSE_HOST))) {
             kwcheckRunCmd.add("--license-host", envVars.get(KlocworkConstants.KLOCWORK_LICENSE_HOST));
@@ -139,12 +147,17 @@ public class KlocworkCiConfig extends AbstractDescribableImpl<KlocworkCiConfig>
             kwcheckRunCmd.addTokenized(envVars.expand(additionalOpts));
         }
 
-        // add list of changed files to end of kwcheck run command
-        kwcheckRunCmd.addTokenized(diffList);
+        // add list of changed files to end of kwcheck run command, one
+        // argument each as paths may contain spaces
+        for (String file : diffList) {
+            kwcheckRunCmd.add(file);
+        }
 
         return kwcheckRunCmd;
     }
 
+    // no longer used by the builder, git changes are detected on the agent
+    @Deprecated
     public ArgumentListBuilder getGitDiffCmd(EnvVars envVars) {
         ArgumentListBuilder gitDiffCmd = new ArgumentListBuilder("git");
         gitDiffCmd.add("diff", "--name-only", envVars.expand(diffAnalysisConfig.getGitPreviousCommit()));
@@ -158,10 +171,10 @@ public class KlocworkCiConfig extends AbstractDescribableImpl<KlocworkCiConfig>
     so we need to make sure to clean these up.
     If both .kwlp and .kwps exist then we reuse them
      */
-    public boolean hasExistingProject(FilePath workspace, EnvVars envVars)
+    public boolean hasExistingProject(FilePath projectRoot)
         throws IOException, InterruptedException {
-        FilePath kwlp = getKwlpDir(workspace, envVars);
-        FilePath kwps = getKwpsDir(workspace, envVars);
+        FilePath kwlp = getKwlpDir(projectRoot);
+        FilePath kwps = getKwpsDir(projectRoot);
 
         if (cleanupProject) {
             // cleanup is forced
@@ -195,14 +208,93 @@ public class KlocworkCiConfig extends AbstractDescribableImpl<KlocworkCiConfig>
         }
     }
 
-    private FilePath getKwlpDir(FilePath workspace, EnvVars envVars) {
-        return new FilePath(
-            workspace.child(envVars.expand(projectDir)), ".kwlp");
+    // directory containing the local project of the job, builds using
+    // isolated project directories only share it as a base
+    public FilePath getProjectRoot(FilePath workspace, EnvVars envVars) {
+        return workspace.child(envVars.expand(projectDir));
+    }
+
+    public FilePath getKwlpDir(FilePath projectRoot) {
+        return new FilePath(projectRoot, ".kwlp");
+    }
+
+    public FilePath getKwpsDir(FilePath projectRoot) {
+        return new FilePath(projectRoot, ".kwps");
+    }
+
+    /*
+     * Returns the snapshot a new local project can be seeded from, or null if
+     * snapshots are disabled or not available on this agent
+     */
+    public KlocworkProjectSnapshot getProjectSnapshot(String ciTool, EnvVars envVars, FilePath workspace,
+                                                      FilePath projectRoot)
+                                        throws IOException, InterruptedException {
+        if (!useProjectSnapshot) {
+            return null;
+        }
+        return KlocworkProjectSnapshot.forProject(ciTool, envVars, workspace,
+            workspace.child(envVars.expand(KlocworkUtil.getDefaultBuildSpec(buildSpec))),
+            getKwlpDir(projectRoot));
+    }
+
+    /*
+     * Returns the per-file result cache of the agent, or null if it is
+     * disabled or not available
+     */
+    public KlocworkResultCache getResultCache(FilePath workspace) {
+        if (!useResultCache) {
+            return null;
+        }
+        FilePath cacheDir = KlocworkUtil.getAgentCacheDir(workspace, KlocworkConstants.RESULT_CACHE_DIR);
+        return (cacheDir != null) ?
+            new KlocworkResultCache(cacheDir.getRemote(), KlocworkConstants.MAX_RESULT_CACHE_SIZE) : null;
+    }
+
+    /*
+     * Returns the fingerprint of everything the analysis depends on: the run
+     * and list commands (tool, options and files), the tool installation, the
+     * server project, the build specification, the local project settings,
+     * the state of the git working tree and the content of the files to
+     * analyse. Throws if the workspace is not a git working tree, as changes
+     * to e.g. headers could not be seen
+     */
+    public String getAnalysisFingerprint(String ciTool, EnvVars envVars, FilePath workspace,
+                                         Launcher launcher, FilePath projectRoot, List<String> diffList)
+                                         throws AbortException {
+        // a full analysis covers every file in the build specification
+        List<String> files = (diffList.isEmpty()) ? null : diffList;
+        try {
+            List<String> values = new ArrayList<String>();
+            values.add(withoutProjectDir(getCiToolRunCmd(ciTool, envVars, projectRoot, diffList)));
+            values.add(withoutProjectDir(getCiToolListCmd(ciTool, envVars, projectRoot, diffList)));
+            values.add(StringUtils.defaultString(KlocworkToolDetector.getToolFingerprint(workspace, envVars)));
+            values.add(StringUtils.defaultString(envVars.get(KlocworkConstants.KLOCWORK_URL)));
+            values.add(StringUtils.defaultString(envVars.get(KlocworkConstants.KLOCWORK_PROJECT)));
+            return launcher.getChannel().call(KlocworkAnalysisReuse.fingerprint(values, files,
+                workspace.getRemote(),
+                envVars.expand(KlocworkUtil.getBuildSpecPath(buildSpec, workspace)),
+                getBuildSpecIndexFile(workspace, envVars).getRemote(),
+                getKwpsDir(projectRoot).getRemote()));
+        } catch (IOException | InterruptedException ex) {
+            throw new AbortException(ex.getMessage());
+        }
+    }
+
+    // the local project directory differs between isolated project slots,
+    // which analyse the same inputs
+    private static String withoutProjectDir(ArgumentListBuilder cmd) {
+        List<String> args = new ArrayList<String>(cmd.toList());
+        int projectDirArg = args.indexOf("--project-dir");
+        if (projectDirArg >= 0) {
+            args.subList(projectDirArg, Math.min(projectDirArg + 2, args.size())).clear();
+        }
+        return args.toString();
     }
 
-    private FilePath getKwpsDir(FilePath workspace, EnvVars envVars) {
+    // cached build spec index, kept next to the local project
+    public FilePath getBuildSpecIndexFile(FilePath workspace, EnvVars envVars) {
         return new FilePath(
-            workspace.child(envVars.expand(projectDir)), ".kwps");
+            getProjectRoot(workspace, envVars), KlocworkConstants.BUILD_SPEC_INDEX_FILE);
     }
 
     private void cleanupExistingProject(FilePath kwlp, FilePath kwps)
@@ -215,19 +307,58 @@ public class KlocworkCiConfig extends AbstractDescribableImpl<KlocworkCiConfig>
         }
     }
 
-    public String getCiToolDiffList(EnvVars envVars, FilePath workspace, Launcher launcher) throws AbortException {
+    public List<String> getCiToolDiffList(EnvVars envVars, FilePath workspace, Launcher launcher)
+                                        throws AbortException {
         try {
-            List<String> fileList = launcher.getChannel().call(
-                new KlocworkBuildSpecParser(workspace.getRemote(),
+            KlocworkBuildSpecParser parser;
+            if (isGitDiffType()) {
+                // the changes are read from the repository on the agent
+                parser = new KlocworkBuildSpecParser(workspace.getRemote(),
+                    new KlocworkGitChangeDetector(workspace.getRemote(),
+                        envVars.expand(diffAnalysisConfig.getGitPreviousCommit())),
+                    envVars.expand(KlocworkUtil.getBuildSpecPath(buildSpec, workspace)),
+                    getBuildSpecIndexFile(workspace, envVars).getRemote());
+            } else {
+                parser = new KlocworkBuildSpecParser(workspace.getRemote(),
                     envVars.expand(getDiffFileList(envVars)),
-                    envVars.expand(KlocworkUtil.getBuildSpecPath(buildSpec, workspace))));
-            return String.join(" ", fileList);
+                    envVars.expand(KlocworkUtil.getBuildSpecPath(buildSpec, workspace)),
+                    getBuildSpecIndexFile(workspace, envVars).getRemote());
+            }
+            return launcher.getChannel().call(parser);
         } catch (IOException | InterruptedException ex) {
             throw new AbortException(ex.getMessage());
         }
 
     }
 
+    /*
+     * Returns the files of this build's shard of the build specification
+     */
+    public List<String> getCiToolShardList(EnvVars envVars, FilePath workspace, Launcher launcher)
+                                        throws AbortException {
+        try {
+            return launcher.getChannel().call(
+                new KlocworkBuildSpecSharder(
+                    envVars.expand(KlocworkUtil.getBuildSpecPath(buildSpec, workspace)),
+                    getBuildSpecIndexFile(workspace, envVars).getRemote(),
+                    getShardCountValue(envVars), getShardIndexValue(envVars)));
+        } catch (IOException | InterruptedException ex) {
+            throw new AbortException(ex.getMessage());
+        }
+    }
+
+    public boolean isSharded(EnvVars envVars) {
+        return getShardCountValue(envVars) > 1;
+    }
+
+    public int getShardCountValue(EnvVars envVars) {
+        return NumberUtils.toInt(envVars.expand(shardCount), 1);
+    }
+
+    public int getShardIndexValue(EnvVars envVars) {
+        return NumberUtils.toInt(envVars.expand(shardIndex), 0);
+    }
+
     public String getDiffFileList(EnvVars envVars) {
         String diffFileList = envVars.expand(diffAnalysisConfig.getDiffFileList());
         return diffFileList;
@@ -245,7 +376,61 @@ public class KlocworkCiConfig extends AbstractDescribableImpl<KlocworkCiConfig>
     public boolean getIncrementalAnalysis() { return incrementalAnalysis; }
     public KlocworkDiffAnalysisConfig getDiffAnalysisConfig() { return diffAnalysisConfig; }
     public String getCiTool() { return ciTool; }
+    public boolean isSummaryConsoleOutput() { return summaryConsoleOutput; }
+    public String getConsoleIssueLimit() { return consoleIssueLimit; }
+
+    public boolean isUseProjectSnapshot() { return useProjectSnapshot; }
+    public boolean isIsolateProjectDir() { return isolateProjectDir; }
+    public boolean isUseResultCache() { return useResultCache; }
+    public boolean isReuseUnchangedAnalysis() { return reuseUnchangedAnalysis; }
+    public String getShardCount() { return shardCount; }
+    public String getShardIndex() { return shardIndex; }
+
+    public int getConsoleIssueLimitValue() {
+        return NumberUtils.toInt(consoleIssueLimit, KlocworkConstants.DEFAULT_CONSOLE_ISSUE_LIMIT);
+    }
+
+    @DataBoundSetter
+    public void setSummaryConsoleOutput(boolean summaryConsoleOutput) {
+        this.summaryConsoleOutput = summaryConsoleOutput;
+    }
+
+    @DataBoundSetter
+    public void setConsoleIssueLimit(String consoleIssueLimit) {
+        this.consoleIssueLimit = consoleIssueLimit;
+    }
+
+    @DataBoundSetter
+    public void setUseProjectSnapshot(boolean useProjectSnapshot) {
+        this.useProjectSnapshot = useProjectSnapshot;
+    }
+
+    @DataBoundSetter
+    public void setIsolateProjectDir(boolean isolateProjectDir) {
+        this.isolateProjectDir = isolateProjectDir;
+    }
+
+    @DataBoundSetter
+    public void setUseResultCache(boolean useResultCache) {
+        this.useResultCache = useResultCache;
+    }
+
+    @DataBoundSetter
+    public void setReuseUnchangedAnalysis(boolean reuseUnchangedAnalysis) {
+        this.reuseUnchangedAnalysis = reuseUnchangedAnalysis;
+    }
+
+    @DataBoundSetter
+    public void setShardCount(String shardCount) {
+        this.shardCount = shardCount;
+    }
+
+    @DataBoundSetter
+    public void setShardIndex(String shardIndex) {
+        this.shardIndex = shardIndex;
+    }
 
+    @Deprecated
     public void setCiTool(String tool) {
         if(tool.equalsIgnoreCase("kwciagent")){
             ciTool = "kwciagent";
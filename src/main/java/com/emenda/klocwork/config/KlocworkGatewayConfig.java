@@ -3,12 +3,14 @@ package com.emenda.klocwork.config;
 
 import org.kohsuke.stapler.DataBoundConstructor;
 
+import com.emenda.klocwork.KlocworkConstants;
 import com.emenda.klocwork.definitions.KlocworkSeverities;
 import com.emenda.klocwork.definitions.KlocworkStatuses;
 import hudson.Extension;
 import hudson.model.AbstractDescribableImpl;
 import hudson.model.Descriptor;
 
+import org.apache.commons.lang3.math.NumberUtils;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
 
@@ -21,6 +23,8 @@ public class KlocworkGatewayConfig extends AbstractDescribableImpl<KlocworkGatew
     private boolean enableCiGateway;
     private List<KlocworkGatewayCiConfig> gatewayCiConfigs;
     private List<KlocworkGatewayServerConfig> gatewayServerConfigs;
+    private boolean summaryConsoleOutput;
+    private String consoleIssueLimit;
 
     /* These are old member vars maintained for backwards compatibility */
     private transient boolean enableDesktopGateway;
@@ -107,6 +111,28 @@ public class KlocworkGatewayConfig extends AbstractDescribableImpl<KlocworkGatew
         }
     }
 
+    @DataBoundSetter
+    public void setSummaryConsoleOutput(boolean summaryConsoleOutput) {
+        this.summaryConsoleOutput = summaryConsoleOutput;
+    }
+
+    @DataBoundSetter
+    public void setConsoleIssueLimit(String consoleIssueLimit) {
+        this.consoleIssueLimit = consoleIssueLimit;
+    }
+
+    public boolean isSummaryConsoleOutput() {
+        return summaryConsoleOutput;
+    }
+
+    public String getConsoleIssueLimit() {
+        return consoleIssueLimit;
+    }
+
+    public int getConsoleIssueLimitValue() {
+        return NumberUtils.toInt(consoleIssueLimit, KlocworkConstants.DEFAULT_CONSOLE_ISSUE_LIMIT);
+    }
+
     public boolean isEnableServerGateway() {
         return getEnableServerGateway();
     }
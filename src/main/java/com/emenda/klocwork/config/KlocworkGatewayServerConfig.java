@@ -8,6 +8,7 @@ import hudson.model.AbstractDescribableImpl;
 import hudson.model.Descriptor;
 import hudson.model.Result;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 
 
 public class KlocworkGatewayServerConfig extends AbstractDescribableImpl<KlocworkGatewayServerConfig> {
@@ -17,6 +18,7 @@ public class KlocworkGatewayServerConfig extends AbstractDescribableImpl<Klocwor
     private final String threshold;
     private final String conditionName;
     private final boolean stopBuild;
+    private boolean newSincePreviousBuild;
 
     public boolean isEnableHTMLReporting() {
         return enableHTMLReporting;
@@ -73,6 +75,18 @@ public class KlocworkGatewayServerConfig extends AbstractDescribableImpl<Klocwor
 
     public boolean getStopBuild() { return stopBuild; }
 
+    /*
+     * Counts the issues that are new since the previous successful build,
+     * from the issue ids stored with the builds, instead of searching the
+     * server
+     */
+    @DataBoundSetter
+    public void setNewSincePreviousBuild(boolean newSincePreviousBuild) {
+        this.newSincePreviousBuild = newSincePreviousBuild;
+    }
+
+    public boolean isNewSincePreviousBuild() { return newSincePreviousBuild; }
+
     @Extension
     public static class DescriptorImpl extends Descriptor<KlocworkGatewayServerConfig> {
         public String getDisplayName() { return null; }
@@ -0,0 +1,94 @@
+package com.emenda.klocwork.definitions;
+
+import org.jenkinsci.plugins.scriptsecurity.sandbox.whitelists.Whitelisted;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+ * Result of a CI analysis, returned by the klocworkIncremental pipeline step
+ * so that scripts can use the issue counts without parsing the report.
+ * The totals are collected while the list output is transformed.
+ */
+public class KlocworkCiSummary implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int issueCount;
+    private final TreeMap<String, Integer> severityTotals;
+    private final TreeMap<String, Integer> statusTotals;
+    private final String reportFile;
+    private final boolean skipped;
+    private final long duration;
+
+    public KlocworkCiSummary(int issueCount, Map<String, Integer> severityTotals,
+                             Map<String, Integer> statusTotals, String reportFile,
+                             boolean skipped, long duration) {
+        this.issueCount = issueCount;
+        this.severityTotals = new TreeMap<String, Integer>(severityTotals);
+        this.statusTotals = new TreeMap<String, Integer>(statusTotals);
+        this.reportFile = reportFile;
+        this.skipped = skipped;
+        this.duration = duration;
+    }
+
+    @Whitelisted
+    public int getIssueCount() {
+        return issueCount;
+    }
+
+    // issue totals keyed by severity name, e.g. "Critical"
+    @Whitelisted
+    public Map<String, Integer> getSeverityTotals() {
+        return Collections.unmodifiableMap(severityTotals);
+    }
+
+    // issue totals keyed by citing status, e.g. "Analyze"
+    @Whitelisted
+    public Map<String, Integer> getStatusTotals() {
+        return Collections.unmodifiableMap(statusTotals);
+    }
+
+    @Whitelisted
+    public int getSeverityCount(String severity) {
+        Integer total = severityTotals.get(severity);
+        return (total != null) ? total : 0;
+    }
+
+    @Whitelisted
+    public int getStatusCount(String status) {
+        Integer total = statusTotals.get(status);
+        return (total != null) ? total : 0;
+    }
+
+    // path of the XML report on the agent
+    @Whitelisted
+    public String getReportFile() {
+        return reportFile;
+    }
+
+    // true if the CI tool did not analyse anything in this build (no files
+    // to analyse, or all results reused)
+    @Whitelisted
+    public boolean isSkipped() {
+        return skipped;
+    }
+
+    // duration of the step in milliseconds
+    @Whitelisted
+    public long getDuration() {
+        return duration;
+    }
+
+    @Whitelisted
+    @Override
+    public String toString() {
+        return "issues: " + Integer.toString(issueCount) +
+            ", severities: " + severityTotals.toString() +
+            ", statuses: " + statusTotals.toString() +
+            ", report: " + reportFile +
+            (skipped ? ", analysis skipped" : "");
+    }
+}
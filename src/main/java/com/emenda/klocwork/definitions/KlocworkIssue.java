@@ -1,6 +1,10 @@
 package com.emenda.klocwork.definitions;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 
 public class KlocworkIssue implements Serializable {
     private String id;
@@ -78,4 +82,43 @@ public class KlocworkIssue implements Serializable {
     public void setStatus(String status) {
         this.status = status;
     }
+
+    /*
+     * Writes the issue fields as length prefixed UTF-8 strings, -1 standing
+     * for null
+     */
+    public void write(DataOutput out) throws IOException {
+        writeString(out, id);
+        writeString(out, code);
+        writeString(out, message);
+        writeString(out, file);
+        writeString(out, line);
+        writeString(out, severity);
+        writeString(out, status);
+    }
+
+    public static KlocworkIssue read(DataInput in) throws IOException {
+        return new KlocworkIssue(readString(in), readString(in), readString(in),
+            readString(in), readString(in), readString(in), readString(in));
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
 }
@@ -0,0 +1,327 @@
+package com.emenda.klocwork.definitions;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/*
+ * Issues keyed on their id, in the order they were first added. Adding or
+ * looking up an issue takes constant time, so collecting the dashboard issues
+ * stays linear in the number of issues returned.
+ *
+ * The set may be given a heap budget. Once the issues held in memory exceed
+ * it they are sorted on id and written to a temporary run file, and finish()
+ * merges the run files into one, dropping duplicate ids. A set that spilled is
+ * read back from disk in id order rather than in the order issues were added,
+ * and must be closed to delete its files.
+ */
+public class KlocworkIssueSet implements Iterable<KlocworkIssue>, Closeable {
+
+    // approximate heap cost of a map entry and its table slot on a 64 bit
+    // JVM with compressed references: LinkedHashMap.Entry (40 bytes) plus a
+    // table slot (4 bytes) at the default load factor
+    private static final long ENTRY_OVERHEAD = 40 + 4 * 4 / 3;
+    // a KlocworkIssue (32 bytes) and, per field, a String (24 bytes) and the
+    // header of its byte array (16 bytes); the characters are added per issue
+    private static final long ISSUE_OVERHEAD = 32 + 7 * (24 + 16);
+
+    // orders ids numerically as long as they are numbers without leading zeros
+    private static final Comparator<String> ID_ORDER = new Comparator<String>() {
+        public int compare(String a, String b) {
+            a = (a == null) ? "" : a;
+            b = (b == null) ? "" : b;
+            return (a.length() != b.length()) ? Integer.compare(a.length(), b.length()) : a.compareTo(b);
+        }
+    };
+
+    private final long heapBudget;
+    private final Map<String, KlocworkIssue> issues = new LinkedHashMap<>();
+    private final List<File> runs = new ArrayList<>();
+    private long heapUsed = 0;
+    private int spilledSize = 0;
+    private int spillCount = 0;
+    private boolean finished = true;
+
+    public KlocworkIssueSet() {
+        this(Long.MAX_VALUE);
+    }
+
+    /*
+     * heapBudget is the approximate memory in bytes the set may use for its
+     * issues before writing them to disk
+     */
+    public KlocworkIssueSet(long heapBudget) {
+        this.heapBudget = heapBudget;
+    }
+
+    /*
+     * Adds the issue unless an issue with the same id was added before,
+     * returns true if it was added. Once the set has spilled, ids written to
+     * disk are only checked by finish()
+     */
+    public boolean add(KlocworkIssue issue) throws IOException {
+        if (issues.putIfAbsent(issue.getId(), issue) != null) {
+            return false;
+        }
+        finished = runs.isEmpty();
+        heapUsed += getHeapSize(issue);
+        if (heapUsed > heapBudget) {
+            spill();
+        }
+        return true;
+    }
+
+    /*
+     * Returns true if an issue with the id is held in memory; issues written
+     * to disk are not looked up
+     */
+    public boolean contains(String id) {
+        return issues.containsKey(id);
+    }
+
+    /*
+     * Returns the number of issues, which once the set has spilled includes
+     * duplicate ids until finish() is called
+     */
+    public int size() {
+        return spilledSize + issues.size();
+    }
+
+    public boolean isSpilled() {
+        return !runs.isEmpty();
+    }
+
+    /*
+     * Returns the number of times issues were written to disk
+     */
+    public int getSpillCount() {
+        return spillCount;
+    }
+
+    /*
+     * Merges the issues written to disk, and those still in memory, into one
+     * run without duplicate ids. Needed before a set that spilled is read
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        if (!issues.isEmpty()) {
+            writeRun();
+        }
+        File merged = Files.createTempFile("klocwork-issues", ".run").toFile();
+        int size = 0;
+        boolean written = false;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(merged.toPath())));
+             RunMerger merger = new RunMerger(runs)) {
+            while (merger.hasNext()) {
+                out.writeBoolean(true);
+                merger.next().write(out);
+                size++;
+            }
+            out.writeBoolean(false);
+            written = true;
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        } finally {
+            if (!written) {
+                Files.deleteIfExists(merged.toPath());
+            }
+        }
+        deleteRuns();
+        runs.add(merged);
+        spilledSize = size;
+        finished = true;
+    }
+
+    /*
+     * Returns the issues, in the order they were added or, if the set has
+     * spilled, in id order. A set that spilled must be finished first
+     */
+    public Iterator<KlocworkIssue> iterator() {
+        if (runs.isEmpty()) {
+            return Collections.unmodifiableCollection(issues.values()).iterator();
+        }
+        if (!finished) {
+            throw new IllegalStateException("Issue set was not finished");
+        }
+        try {
+            return new RunMerger(runs);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /*
+     * Returns the issues as a list, in the order of iterator()
+     */
+    public ArrayList<KlocworkIssue> toList() {
+        ArrayList<KlocworkIssue> list = new ArrayList<>(size());
+        for (KlocworkIssue issue : this) {
+            list.add(issue);
+        }
+        return list;
+    }
+
+    /*
+     * Returns the approximate memory used by the id index on top of the
+     * issues themselves, in bytes
+     */
+    public long getIndexOverhead() {
+        return issues.size() * ENTRY_OVERHEAD;
+    }
+
+    /*
+     * Deletes the files of a set that spilled
+     */
+    public void close() throws IOException {
+        deleteRuns();
+    }
+
+    private void spill() throws IOException {
+        writeRun();
+        spillCount++;
+        finished = false;
+    }
+
+    private void writeRun() throws IOException {
+        List<KlocworkIssue> sorted = new ArrayList<>(issues.values());
+        Collections.sort(sorted, new Comparator<KlocworkIssue>() {
+            public int compare(KlocworkIssue a, KlocworkIssue b) {
+                return ID_ORDER.compare(a.getId(), b.getId());
+            }
+        });
+        File run = Files.createTempFile("klocwork-issues", ".run").toFile();
+        runs.add(run);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(run.toPath())))) {
+            for (KlocworkIssue issue : sorted) {
+                out.writeBoolean(true);
+                issue.write(out);
+            }
+            out.writeBoolean(false);
+        }
+        spilledSize += issues.size();
+        issues.clear();
+        heapUsed = 0;
+    }
+
+    private void deleteRuns() throws IOException {
+        for (File run : runs) {
+            Files.deleteIfExists(run.toPath());
+        }
+        runs.clear();
+    }
+
+    private static long getHeapSize(KlocworkIssue issue) {
+        return ISSUE_OVERHEAD + ENTRY_OVERHEAD + length(issue.getId()) + length(issue.getCode()) +
+            length(issue.getMessage()) + length(issue.getFile()) + length(issue.getLine()) +
+            length(issue.getSeverity()) + length(issue.getStatus());
+    }
+
+    private static int length(String value) {
+        return (value == null) ? 0 : value.length();
+    }
+
+    /*
+     * Reads run files sorted on id in id order, keeping the issue of the
+     * earliest run when several runs hold the same id
+     */
+    private static class RunMerger implements Iterator<KlocworkIssue>, Closeable {
+
+        private final List<DataInputStream> inputs = new ArrayList<>();
+        private final PriorityQueue<Head> heads = new PriorityQueue<>();
+
+        RunMerger(List<File> runs) throws IOException {
+            try {
+                for (File run : runs) {
+                    inputs.add(new DataInputStream(new BufferedInputStream(
+                        Files.newInputStream(run.toPath()))));
+                    advance(inputs.size() - 1);
+                }
+            } catch (IOException ex) {
+                closeQuietly();
+                throw ex;
+            }
+        }
+
+        public boolean hasNext() {
+            if (heads.isEmpty()) {
+                closeQuietly();
+                return false;
+            }
+            return true;
+        }
+
+        public KlocworkIssue next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Head head = heads.poll();
+            try {
+                advance(head.run);
+                while (!heads.isEmpty() && ID_ORDER.compare(heads.peek().issue.getId(), head.issue.getId()) == 0) {
+                    advance(heads.poll().run);
+                }
+            } catch (IOException ex) {
+                closeQuietly();
+                throw new UncheckedIOException(ex);
+            }
+            return head.issue;
+        }
+
+        public void close() {
+            closeQuietly();
+        }
+
+        private void advance(int run) throws IOException {
+            DataInputStream in = inputs.get(run);
+            if (in.readBoolean()) {
+                heads.add(new Head(KlocworkIssue.read(in), run));
+            }
+        }
+
+        private void closeQuietly() {
+            for (DataInputStream in : inputs) {
+                try {
+                    in.close();
+                } catch (IOException ex) {
+                    // only read from
+                }
+            }
+            heads.clear();
+        }
+    }
+
+    private static class Head implements Comparable<Head> {
+
+        private final KlocworkIssue issue;
+        private final int run;
+
+        Head(KlocworkIssue issue, int run) {
+            this.issue = issue;
+            this.run = run;
+        }
+
+        public int compareTo(Head other) {
+            int result = ID_ORDER.compare(issue.getId(), other.issue.getId());
+            return (result != 0) ? result : Integer.compare(run, other.run);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.emenda.klocwork.pipeline;
 
 import com.emenda.klocwork.KlocworkCiBuilder;
 import com.emenda.klocwork.config.KlocworkCiConfig;
+import com.emenda.klocwork.definitions.KlocworkCiSummary;
 import com.google.inject.Inject;
 import hudson.EnvVars;
 import hudson.Extension;
@@ -45,7 +46,7 @@ public class KlocworkCiStep extends AbstractStepImpl {
     public KlocworkCiConfig getCiConfig() { return ciConfig; }
 
 
-    private static class KlocworkCiStepExecution extends AbstractSynchronousNonBlockingStepExecution<Void> {
+    private static class KlocworkCiStepExecution extends AbstractSynchronousNonBlockingStepExecution<KlocworkCiSummary> {
 
         private static final long serialVersionUID = 1L;
 
@@ -72,11 +73,11 @@ public class KlocworkCiStep extends AbstractStepImpl {
         private transient EnvVars env;
 
         @Override
-        protected Void run() throws Exception {
+        protected KlocworkCiSummary run() throws Exception {
 
             KlocworkCiBuilder builder = new KlocworkCiBuilder(step.getCiConfig());
-            builder.perform(build, env, workspace, launcher, listener);
-            return null;
+            // issue totals for the pipeline, without reading the report again
+            return builder.analyse(build, env, workspace, launcher, listener);
         }
     }
 
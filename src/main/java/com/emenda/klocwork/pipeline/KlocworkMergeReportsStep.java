@@ -0,0 +1,124 @@
+package com.emenda.klocwork.pipeline;
+
+import com.emenda.klocwork.KlocworkLogger;
+import com.emenda.klocwork.util.KlocworkReportMerger;
+import com.emenda.klocwork.util.KlocworkUtil;
+import com.google.inject.Inject;
+import hudson.AbortException;
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepDescriptorImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractSynchronousNonBlockingStepExecution;
+import org.jenkinsci.plugins.workflow.steps.StepContextParameter;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Merges the XML reports of sharded klocworkIncremental steps (collected into
+ * one workspace, e.g. with stash/unstash) into a single report for the
+ * klocworkQualityGateway step
+ */
+public class KlocworkMergeReportsStep extends AbstractStepImpl {
+
+    private final String reports;
+    private String reportFile;
+
+    @DataBoundConstructor
+    public KlocworkMergeReportsStep(String reports) {
+        this.reports = reports;
+    }
+
+    @DataBoundSetter
+    public void setReportFile(String reportFile) {
+        this.reportFile = reportFile;
+    }
+
+    public String getReports() { return reports; }
+    public String getReportFile() { return reportFile; }
+
+    private static class KlocworkMergeReportsStepExecution extends AbstractSynchronousNonBlockingStepExecution<Integer> {
+
+        private static final long serialVersionUID = 1L;
+
+        @Inject
+        private transient KlocworkMergeReportsStep step;
+
+        @StepContextParameter
+        @SuppressWarnings("unused")
+        private transient FilePath workspace;
+
+        @StepContextParameter
+        @SuppressWarnings("unused")
+        private transient Launcher launcher;
+
+        @StepContextParameter
+        @SuppressWarnings("unused")
+        private transient TaskListener listener;
+
+        @StepContextParameter
+        private transient EnvVars env;
+
+        @Override
+        protected Integer run() throws Exception {
+            KlocworkLogger logger = new KlocworkLogger("MergeReports", listener.getLogger());
+            String path = env.expand(KlocworkUtil.getDefaultKwcheckReportFile(step.getReportFile()));
+            FilePath mergedReport = (new File(path).isAbsolute()) ?
+                new FilePath(launcher.getChannel(), path) : new FilePath(workspace, path);
+            // the report merged by a previous build may match the pattern too,
+            // and would bring back issues fixed since
+            mergedReport.delete();
+
+            List<String> reportPaths = new ArrayList<String>();
+            FilePath[] shardReports = workspace.list(env.expand(step.getReports()));
+            if (shardReports != null) {
+                for (FilePath shardReport : shardReports) {
+                    if (!shardReport.getRemote().equals(mergedReport.getRemote())) {
+                        reportPaths.add(shardReport.getRemote());
+                    }
+                }
+            }
+            if (reportPaths.isEmpty()) {
+                throw new AbortException("No reports found matching " + step.getReports());
+            }
+            // merge in a stable order so that the first copy of an issue wins
+            String[] sortedPaths = reportPaths.toArray(new String[reportPaths.size()]);
+            Arrays.sort(sortedPaths);
+
+            logger.logMessage("Merging " + Integer.toString(sortedPaths.length) +
+                " reports into " + mergedReport.getRemote());
+            Integer issueCount = launcher.getChannel().call(
+                new KlocworkReportMerger(Arrays.asList(sortedPaths), mergedReport.getRemote()));
+            logger.logMessage("Merged report contains " + issueCount.toString() + " issues");
+            return issueCount;
+        }
+    }
+
+    @Extension(optional = true)
+    public static class DescriptorImpl extends AbstractStepDescriptorImpl {
+        public DescriptorImpl() {
+            super(KlocworkMergeReportsStepExecution.class);
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "klocworkMergeReports";
+        }
+
+        @Nonnull
+        @Override
+        public String getDisplayName() {
+            return "Klocwork - Merge Sharded CI Reports";
+        }
+    }
+}
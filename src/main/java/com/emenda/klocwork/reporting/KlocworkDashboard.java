@@ -1,30 +1,98 @@
 package com.emenda.klocwork.reporting;
 
+import com.emenda.klocwork.KlocworkConstants;
 import com.emenda.klocwork.definitions.KlocworkIssue;
-import hudson.model.Action;
+import com.emenda.klocwork.definitions.KlocworkIssueSet;
+import hudson.model.Run;
+import jenkins.model.RunAction2;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
 
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.ref.SoftReference;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
-public class KlocworkDashboard implements Action {
+/*
+ * Dashboard of the issues found by the quality gateway. The issue lists are
+ * kept in a file in the build directory (see KlocworkDashboardStore) rather
+ * than in build.xml, and are only read when the dashboard is viewed.
+ *
+ * Each gateway step of a build adds its own dashboard; the second and later
+ * ones get a numbered URL and issues file so they do not replace the first.
+ */
+public class KlocworkDashboard implements RunAction2 {
 
     public final String url;
     public final String text;
     public final String icon;
-    public final ArrayList<KlocworkIssue> localIssues;
-    public final ArrayList<KlocworkIssue> serverIssues;
     public final boolean shouldDashboardLocal;
     public final boolean shouldDashboardServer;
+    private int localIssuesSize;
+    private int serverIssuesSize;
+    // file in the build directory holding the issue lists
+    private String issuesFile;
 
-    public KlocworkDashboard(ArrayList<KlocworkIssue> localIssues, ArrayList<KlocworkIssue> serverIssues, boolean shouldDashboardLocal, boolean shouldDashboardServer) {
+    // issue lists of builds recorded before they were moved out of build.xml
+    private ArrayList<KlocworkIssue> localIssues;
+    private ArrayList<KlocworkIssue> serverIssues;
+
+    private transient Run<?, ?> run;
+    // the lists are read again if memory runs low
+    private transient SoftReference<KlocworkDashboardStore.Issues> issues;
+
+    public KlocworkDashboard(Run<?, ?> run, KlocworkIssueSet localIssues,
+                             KlocworkIssueSet serverIssues, boolean shouldDashboardLocal,
+                             boolean shouldDashboardServer) throws IOException {
         this.shouldDashboardLocal = shouldDashboardLocal;
         this.shouldDashboardServer = shouldDashboardServer;
-        this.url = "KlocworkDashboard";
-        this.text = "Klocwork Dashboard";
+        int number = run.getActions(KlocworkDashboard.class).size() + 1;
+        this.url = (number == 1) ? "KlocworkDashboard" : "KlocworkDashboard" + number;
+        this.text = (number == 1) ? "Klocwork Dashboard" : "Klocwork Dashboard " + number;
+        this.issuesFile = (number == 1) ? KlocworkConstants.DASHBOARD_ISSUES_FILE :
+            KlocworkConstants.DASHBOARD_ISSUES_FILE.replace(".bin.gz", "-" + number + ".bin.gz");
         this.icon = "/plugin/klocwork/icons/klocwork-24.gif";
-        this.localIssues = localIssues;
-        this.serverIssues = serverIssues;
+        this.localIssuesSize = localIssues.size();
+        this.serverIssuesSize = serverIssues.size();
+        this.run = run;
+        // the lists are read back when the dashboard is first viewed
+        KlocworkDashboardStore.write(getIssuesFile(), localIssues, serverIssues);
+    }
+
+    protected Object readResolve() {
+        if (localIssues != null) {
+            localIssuesSize = localIssues.size();
+        }
+        if (serverIssues != null) {
+            serverIssuesSize = serverIssues.size();
+        }
+        // dashboards recorded before the file was named per dashboard
+        if (issuesFile == null) {
+            issuesFile = KlocworkConstants.DASHBOARD_ISSUES_FILE;
+        }
+        return this;
+    }
+
+    @Override
+    public void onAttached(Run<?, ?> run) {
+        this.run = run;
+    }
+
+    @Override
+    public void onLoad(Run<?, ?> run) {
+        this.run = run;
     }
 
     @Override
@@ -53,19 +121,107 @@ public class KlocworkDashboard implements Action {
     }
 
     public ArrayList<KlocworkIssue> getLocalIssues() {
-        return localIssues;
+        return getIssues().getLocalIssues();
     }
 
     public String getLocalIssuesSize() {
-        return String.valueOf(localIssues.size());
+        return String.valueOf(localIssuesSize);
     }
 
     public ArrayList<KlocworkIssue> getServerIssues() {
-        return serverIssues;
+        return getIssues().getServerIssues();
     }
 
     public String getServerIssuesSize() {
-        return String.valueOf(serverIssues.size());
+        return String.valueOf(serverIssuesSize);
+    }
+
+    public Run<?, ?> getRun() {
+        return run;
+    }
+
+    /*
+     * Returns one page of the local or server issues as JSON, so the page can
+     * load rows as they are needed instead of rendering every issue.
+     *
+     * Parameters: list (local or server), offset, limit, filter (search box
+     * syntax, see KlocworkDashboardQuery), severity (comma separated), sort
+     * (column name) and order (asc or desc).
+     */
+    public void doIssues(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        List<KlocworkIssue> issues;
+        if ("local".equals(req.getParameter("list")) && shouldDashboardLocal) {
+            issues = getLocalIssues();
+        } else if ("server".equals(req.getParameter("list")) && shouldDashboardServer) {
+            issues = getServerIssues();
+        } else {
+            rsp.sendError(StaplerResponse.SC_NOT_FOUND, "Unknown issue list");
+            return;
+        }
+
+        KlocworkDashboardQuery query = new KlocworkDashboardQuery(req.getParameter("filter"),
+            req.getParameter("severity"), req.getParameter("sort"), "desc".equals(req.getParameter("order")));
+        List<KlocworkIssue> matches = query.apply(issues);
+        int offset = Math.min(Math.max(NumberUtils.toInt(req.getParameter("offset"), 0), 0), matches.size());
+        int limit = Math.min(Math.max(NumberUtils.toInt(req.getParameter("limit"),
+            KlocworkConstants.DASHBOARD_PAGE_SIZE), 0), KlocworkConstants.DASHBOARD_MAX_PAGE_SIZE);
+
+        JSONArray rows = new JSONArray();
+        for (KlocworkIssue issue : matches.subList(offset, Math.min(offset + limit, matches.size()))) {
+            JSONObject row = new JSONObject();
+            row.element("id", issue.getId());
+            row.element("code", issue.getCode());
+            row.element("message", issue.getMessage());
+            row.element("severity", issue.getSeverity());
+            row.element("status", issue.getStatus());
+            row.element("file", issue.getFile());
+            row.element("line", issue.getLine());
+            rows.element(row);
+        }
+        JSONObject result = new JSONObject();
+        result.element("total", matches.size());
+        result.element("offset", offset);
+        result.element("issues", rows);
+
+        rsp.setContentType("application/json;charset=UTF-8");
+        rsp.setHeader("Cache-Control", "no-cache");
+        rsp.getWriter().write(result.toString());
+    }
+
+    /*
+     * Streams the issues as export.ndjson, export.csv or export.sarif, read
+     * one at a time from the dashboard file. The list, filter and severity
+     * parameters select issues as for doIssues; the response is compressed
+     * when the client accepts gzip.
+     */
+    public void doDynamic(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        String path = req.getRestOfPath();
+        String extension = path.startsWith("/export.") ? path.substring("/export.".length()) : "";
+        if (!KlocworkDashboardExport.EXTENSIONS.contains(extension)) {
+            rsp.sendError(StaplerResponse.SC_NOT_FOUND);
+            return;
+        }
+        String list = req.getParameter("list");
+        final boolean exportLocal = shouldDashboardLocal && (list == null || "local".equals(list));
+        final boolean exportServer = shouldDashboardServer && (list == null || "server".equals(list));
+        final KlocworkDashboardQuery query = new KlocworkDashboardQuery(req.getParameter("filter"),
+            req.getParameter("severity"), null, false);
+
+        rsp.setContentType(KlocworkDashboardExport.getContentType(extension));
+        rsp.setHeader("Content-Disposition", "attachment; filename=klocwork-issues." + extension);
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                rsp.getCompressedOutputStream(req), StandardCharsets.UTF_8))) {
+            final KlocworkDashboardExport export = KlocworkDashboardExport.forExtension(extension, out);
+            export.start();
+            forEachIssue(new KlocworkDashboardStore.IssueHandler() {
+                public void issue(boolean server, KlocworkIssue issue) throws IOException {
+                    if ((server ? exportServer : exportLocal) && query.matches(issue)) {
+                        export.write(server ? "server" : "local", issue);
+                    }
+                }
+            });
+            export.end();
+        }
     }
 
     public boolean isShouldDashboardLocal() {
@@ -75,4 +231,53 @@ public class KlocworkDashboard implements Action {
     public boolean isShouldDashboardServer() {
         return shouldDashboardServer;
     }
+
+    private File getIssuesFile() {
+        return new File(run.getRootDir(), issuesFile);
+    }
+
+    /*
+     * Passes the issues to handler, from memory if they are held there and
+     * otherwise straight from the dashboard file
+     */
+    private void forEachIssue(KlocworkDashboardStore.IssueHandler handler) throws IOException {
+        KlocworkDashboardStore.Issues cached;
+        synchronized (this) {
+            cached = (localIssues != null || serverIssues != null || issues == null) ? null : issues.get();
+        }
+        if (cached == null && localIssues == null && serverIssues == null) {
+            KlocworkDashboardStore.scan(getIssuesFile(), handler);
+            return;
+        }
+        if (cached == null) {
+            cached = getIssues();
+        }
+        for (KlocworkIssue issue : cached.getLocalIssues()) {
+            handler.issue(false, issue);
+        }
+        for (KlocworkIssue issue : cached.getServerIssues()) {
+            handler.issue(true, issue);
+        }
+    }
+
+    private synchronized KlocworkDashboardStore.Issues getIssues() {
+        if (localIssues != null || serverIssues != null) {
+            return new KlocworkDashboardStore.Issues(
+                (localIssues != null) ? localIssues : new ArrayList<KlocworkIssue>(),
+                (serverIssues != null) ? serverIssues : new ArrayList<KlocworkIssue>());
+        }
+        KlocworkDashboardStore.Issues cached = (issues != null) ? issues.get() : null;
+        if (cached == null) {
+            try {
+                cached = KlocworkDashboardStore.read(getIssuesFile());
+            } catch (IOException ex) {
+                Logger.getLogger(KlocworkDashboard.class.getName()).log(Level.WARNING,
+                    "Unable to read the Klocwork dashboard issues of " + run.getExternalizableId(), ex);
+                cached = new KlocworkDashboardStore.Issues(
+                    new ArrayList<KlocworkIssue>(), new ArrayList<KlocworkIssue>());
+            }
+            issues = new SoftReference<>(cached);
+        }
+        return cached;
+    }
 }
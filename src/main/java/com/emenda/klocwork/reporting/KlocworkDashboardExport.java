@@ -0,0 +1,214 @@
+package com.emenda.klocwork.reporting;
+
+import com.emenda.klocwork.definitions.KlocworkIssue;
+import net.sf.json.util.JSONUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/*
+ * Writes dashboard issues one at a time in an export format, so that an
+ * export is streamed to the client instead of being built in memory.
+ */
+public abstract class KlocworkDashboardExport {
+
+    public static final List<String> EXTENSIONS = Collections.unmodifiableList(
+        Arrays.asList("ndjson", "csv", "sarif"));
+
+    protected final Writer out;
+
+    protected KlocworkDashboardExport(Writer out) {
+        this.out = out;
+    }
+
+    /*
+     * Returns the export for a file extension (ndjson, csv or sarif), or null
+     * if there is none
+     */
+    public static KlocworkDashboardExport forExtension(String extension, Writer out) {
+        if ("ndjson".equals(extension)) {
+            return new NdJson(out);
+        } else if ("csv".equals(extension)) {
+            return new Csv(out);
+        } else if ("sarif".equals(extension)) {
+            return new Sarif(out);
+        }
+        return null;
+    }
+
+    public static String getContentType(String extension) {
+        if ("ndjson".equals(extension)) {
+            return "application/x-ndjson;charset=UTF-8";
+        } else if ("csv".equals(extension)) {
+            return "text/csv;charset=UTF-8";
+        }
+        return "application/sarif+json;charset=UTF-8";
+    }
+
+    public void start() throws IOException {
+    }
+
+    /*
+     * Writes an issue, list being "local" or "server"
+     */
+    public abstract void write(String list, KlocworkIssue issue) throws IOException;
+
+    public void end() throws IOException {
+    }
+
+    /*
+     * Returns value as a JSON string, or null. Objects are written by hand as
+     * json-lib would parse values that look like JSON
+     */
+    protected static String quote(String value) {
+        return (value == null) ? "null" : JSONUtils.quote(value);
+    }
+
+    /*
+     * One JSON object per line
+     */
+    private static class NdJson extends KlocworkDashboardExport {
+
+        NdJson(Writer out) {
+            super(out);
+        }
+
+        public void write(String list, KlocworkIssue issue) throws IOException {
+            out.write("{\"list\":" + quote(list) + ",\"id\":" + quote(issue.getId()) +
+                ",\"code\":" + quote(issue.getCode()) + ",\"message\":" + quote(issue.getMessage()) +
+                ",\"severity\":" + quote(issue.getSeverity()) + ",\"status\":" + quote(issue.getStatus()) +
+                ",\"file\":" + quote(issue.getFile()) + ",\"line\":" + quote(issue.getLine()) + "}\n");
+        }
+    }
+
+    /*
+     * RFC 4180 comma separated values with a header row. Values starting with
+     * a character spreadsheets read as the start of a formula are prefixed
+     * with a quote, so that opening an export never runs issue text as one
+     */
+    private static class Csv extends KlocworkDashboardExport {
+
+        Csv(Writer out) {
+            super(out);
+        }
+
+        public void start() throws IOException {
+            out.write("list,id,code,message,severity,status,file,line\r\n");
+        }
+
+        public void write(String list, KlocworkIssue issue) throws IOException {
+            out.write(list);
+            for (String value : new String[] { issue.getId(), issue.getCode(), issue.getMessage(),
+                    issue.getSeverity(), issue.getStatus(), issue.getFile(), issue.getLine() }) {
+                out.write(',');
+                writeValue(StringUtils.defaultString(value));
+            }
+            out.write("\r\n");
+        }
+
+        private void writeValue(String value) throws IOException {
+            if (!value.isEmpty() && "=+-@\t\r".indexOf(value.charAt(0)) >= 0) {
+                value = "'" + value;
+            }
+            if (StringUtils.containsAny(value, ",\"\r\n")) {
+                out.write('"');
+                out.write(value.replace("\"", "\"\""));
+                out.write('"');
+            } else {
+                out.write(value);
+            }
+        }
+    }
+
+    /*
+     * SARIF 2.1.0 log with one run; each issue is a result whose rule is the
+     * Klocwork checker. Absolute file paths are written as file URIs, relative
+     * ones as relative URIs against the SRCROOT base
+     */
+    private static class Sarif extends KlocworkDashboardExport {
+
+        private boolean first = true;
+
+        Sarif(Writer out) {
+            super(out);
+        }
+
+        public void start() throws IOException {
+            out.write("{\"version\":\"2.1.0\",\"$schema\":\"https://json.schemastore.org/sarif-2.1.0.json\"," +
+                "\"runs\":[{\"tool\":{\"driver\":{\"name\":\"Klocwork\"}},\"results\":[");
+        }
+
+        public void write(String list, KlocworkIssue issue) throws IOException {
+            if (!first) {
+                out.write(',');
+            }
+            first = false;
+            out.write("{\"ruleId\":" + quote(StringUtils.defaultString(issue.getCode())) +
+                ",\"level\":" + quote(getLevel(issue.getSeverity())) +
+                ",\"message\":{\"text\":" + quote(StringUtils.defaultString(issue.getMessage())) + "}");
+            if (!StringUtils.isEmpty(issue.getFile())) {
+                String path = issue.getFile().replace('\\', '/');
+                boolean absolute = path.startsWith("/") || path.matches("[A-Za-z]:/.*");
+                out.write(",\"locations\":[{\"physicalLocation\":{\"artifactLocation\":{\"uri\":" +
+                    quote(absolute ? toFileUri(path) : encodePath(path)) +
+                    (absolute ? "" : ",\"uriBaseId\":\"SRCROOT\"") + "}");
+                int line = NumberUtils.toInt(issue.getLine(), 0);
+                if (line > 0) {
+                    out.write(",\"region\":{\"startLine\":" + Integer.toString(line) + "}");
+                }
+                out.write("}}]");
+            }
+            out.write(",\"properties\":{\"id\":" + quote(issue.getId()) +
+                ",\"severity\":" + quote(issue.getSeverity()) + ",\"status\":" + quote(issue.getStatus()) +
+                ",\"list\":" + quote(list) + "}}");
+        }
+
+        public void end() throws IOException {
+            out.write("]}]}");
+        }
+
+        /*
+         * Returns the file URI of an absolute path with / separators, e.g.
+         * file:///C:/src/a.c or file://server/share/a.c for a UNC path
+         */
+        private static String toFileUri(String path) {
+            if (path.startsWith("//")) {
+                return "file:" + encodePath(path);
+            }
+            return "file://" + (path.startsWith("/") ? "" : "/") + encodePath(path);
+        }
+
+        /*
+         * Percent-encodes the characters of a path with / separators that
+         * cannot appear in a URI path
+         */
+        private static String encodePath(String path) {
+            StringBuilder uri = new StringBuilder(path.length());
+            for (byte b : path.getBytes(StandardCharsets.UTF_8)) {
+                char c = (char) (b & 0xff);
+                if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') ||
+                        "-._~/!$&'()*+,;=:@".indexOf(c) >= 0) {
+                    uri.append(c);
+                } else {
+                    uri.append('%').append(String.format("%02X", b & 0xff));
+                }
+            }
+            return uri.toString();
+        }
+
+        private static String getLevel(String severity) {
+            if ("Critical".equalsIgnoreCase(severity) || "Error".equalsIgnoreCase(severity)) {
+                return "error";
+            } else if ("Warning".equalsIgnoreCase(severity)) {
+                return "warning";
+            }
+            return "note";
+        }
+    }
+}
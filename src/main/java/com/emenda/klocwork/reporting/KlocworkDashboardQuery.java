@@ -0,0 +1,182 @@
+package com.emenda.klocwork.reporting;
+
+import com.emenda.klocwork.definitions.KlocworkIssue;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * Filters and sorts the issues of a KlocworkDashboard on the controller, so
+ * that the dashboard page only receives the rows it shows.
+ *
+ * The filter uses the syntax of the dashboard search box: either plain text
+ * matched against every column, or space separated field:value terms (id,
+ * code, message, severity, status, file, line) that must all match. A value
+ * may list alternatives separated by commas. Matching is case insensitive and
+ * on substrings, as it was when the page filtered the table itself.
+ */
+public class KlocworkDashboardQuery {
+
+    public static final List<String> COLUMNS = Collections.unmodifiableList(
+        Arrays.asList("id", "code", "message", "severity", "status", "file", "line"));
+
+    private static final Pattern FIELD = Pattern.compile("\\w+:");
+    private static final Pattern TERM = Pattern.compile("[^\\s\"']+|\"([^\"]*)\"|'([^']*)'");
+
+    private final String text;
+    private final List<Term> terms = new ArrayList<>();
+    private final List<String> severities = new ArrayList<>();
+    private final Comparator<KlocworkIssue> order;
+
+    /*
+     * filter is the search box text, severity a comma separated list of
+     * severities to keep and sort the column to order by; any may be empty
+     */
+    public KlocworkDashboardQuery(String filter, String severity, String sort, boolean descending) {
+        filter = StringUtils.defaultString(filter).trim().toUpperCase(Locale.ENGLISH);
+        if (FIELD.matcher(filter).find()) {
+            text = null;
+            Matcher matcher = TERM.matcher(filter);
+            while (matcher.find()) {
+                addTerm(matcher.group().replace("\"", "").replace("'", ""));
+            }
+        } else {
+            text = filter;
+        }
+        for (String value : StringUtils.defaultString(severity).split(",")) {
+            if (!value.trim().isEmpty()) {
+                severities.add(value.trim().toUpperCase(Locale.ENGLISH));
+            }
+        }
+        order = getOrder(sort, descending);
+    }
+
+    /*
+     * Returns the issues that match the query, in the requested order
+     */
+    public List<KlocworkIssue> apply(List<KlocworkIssue> issues) {
+        List<KlocworkIssue> result = new ArrayList<>();
+        for (KlocworkIssue issue : issues) {
+            if (matches(issue)) {
+                result.add(issue);
+            }
+        }
+        if (order != null) {
+            Collections.sort(result, order);
+        }
+        return result;
+    }
+
+    public boolean matches(KlocworkIssue issue) {
+        if (!severities.isEmpty() &&
+                !severities.contains(StringUtils.defaultString(issue.getSeverity()).toUpperCase(Locale.ENGLISH))) {
+            return false;
+        }
+        if (text != null) {
+            if (text.isEmpty()) {
+                return true;
+            }
+            for (int column = 0; column < COLUMNS.size(); column++) {
+                if (getValue(issue, column).contains(text)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        for (Term term : terms) {
+            String value = getValue(issue, term.column);
+            boolean found = false;
+            for (String alternative : term.alternatives) {
+                if (value.contains(alternative)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void addTerm(String term) {
+        int separator = term.indexOf(':');
+        if (separator < 0) {
+            // the page ignored words without a field as well
+            return;
+        }
+        int column = COLUMNS.indexOf(term.substring(0, separator).toLowerCase(Locale.ENGLISH));
+        if (column < 0) {
+            return;
+        }
+        List<String> alternatives = new ArrayList<>();
+        for (String value : term.substring(separator + 1).replace("+", "").split(",")) {
+            if (!value.isEmpty()) {
+                alternatives.add(value);
+            }
+        }
+        if (!alternatives.isEmpty()) {
+            terms.add(new Term(column, alternatives));
+        }
+    }
+
+    private static class Term {
+
+        private final int column;
+        private final List<String> alternatives;
+
+        Term(int column, List<String> alternatives) {
+            this.column = column;
+            this.alternatives = alternatives;
+        }
+    }
+
+    private static Comparator<KlocworkIssue> getOrder(String sort, final boolean descending) {
+        final int column = COLUMNS.indexOf(StringUtils.defaultString(sort).toLowerCase(Locale.ENGLISH));
+        if (column < 0) {
+            return null;
+        }
+        // id and line hold numbers and are compared as such
+        final boolean numeric = column == 0 || column == 6;
+        return new Comparator<KlocworkIssue>() {
+            public int compare(KlocworkIssue a, KlocworkIssue b) {
+                int result = numeric ?
+                    Long.compare(toNumber(getRawValue(a, column)), toNumber(getRawValue(b, column))) :
+                    StringUtils.defaultString(getRawValue(a, column)).compareToIgnoreCase(
+                        StringUtils.defaultString(getRawValue(b, column)));
+                return descending ? -result : result;
+            }
+        };
+    }
+
+    private static long toNumber(String value) {
+        try {
+            return Long.parseLong(StringUtils.defaultString(value).trim());
+        } catch (NumberFormatException ex) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private static String getValue(KlocworkIssue issue, int column) {
+        return StringUtils.defaultString(getRawValue(issue, column)).toUpperCase(Locale.ENGLISH);
+    }
+
+    private static String getRawValue(KlocworkIssue issue, int column) {
+        switch (column) {
+            case 0: return issue.getId();
+            case 1: return issue.getCode();
+            case 2: return issue.getMessage();
+            case 3: return issue.getSeverity();
+            case 4: return issue.getStatus();
+            case 5: return issue.getFile();
+            default: return issue.getLine();
+        }
+    }
+}
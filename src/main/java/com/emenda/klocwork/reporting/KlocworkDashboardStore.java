@@ -0,0 +1,130 @@
+package com.emenda.klocwork.reporting;
+
+import com.emenda.klocwork.definitions.KlocworkIssue;
+import com.emenda.klocwork.definitions.KlocworkIssueSet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/*
+ * Reads and writes the issue lists of a KlocworkDashboard, which are kept in
+ * a gzip compressed file in the build directory instead of build.xml.
+ *
+ * The file holds a header followed by the local and then the server issues,
+ * each list preceded by its size. Issues are written with
+ * KlocworkIssue.write.
+ */
+public class KlocworkDashboardStore {
+
+    private static final int MAGIC = 0x4b574453; // "KWDS"
+    private static final int FORMAT_VERSION = 1;
+
+    private KlocworkDashboardStore() {
+    }
+
+    public static class Issues {
+
+        private final ArrayList<KlocworkIssue> localIssues;
+        private final ArrayList<KlocworkIssue> serverIssues;
+
+        public Issues(ArrayList<KlocworkIssue> localIssues, ArrayList<KlocworkIssue> serverIssues) {
+            this.localIssues = localIssues;
+            this.serverIssues = serverIssues;
+        }
+
+        public ArrayList<KlocworkIssue> getLocalIssues() {
+            return localIssues;
+        }
+
+        public ArrayList<KlocworkIssue> getServerIssues() {
+            return serverIssues;
+        }
+    }
+
+    public static void write(File file, KlocworkIssueSet localIssues, KlocworkIssueSet serverIssues)
+                                throws IOException {
+        Path tmpFile = Files.createTempFile(file.getParentFile().toPath(), file.getName(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new GZIPOutputStream(Files.newOutputStream(tmpFile))))) {
+                out.writeInt(MAGIC);
+                out.writeByte(FORMAT_VERSION);
+                writeIssues(out, localIssues);
+                writeIssues(out, serverIssues);
+            }
+            Files.move(tmpFile, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmpFile);
+        }
+    }
+
+    /*
+     * Receives the issues of a dashboard file as they are read
+     */
+    public interface IssueHandler {
+        void issue(boolean server, KlocworkIssue issue) throws IOException;
+    }
+
+    /*
+     * Reads the issues of a dashboard file one at a time, without keeping
+     * them in memory
+     */
+    public static void scan(File file, IssueHandler handler) throws IOException {
+        try (DataInputStream in = open(file)) {
+            for (boolean server : new boolean[] { false, true }) {
+                int size = in.readInt();
+                for (int i = 0; i < size; i++) {
+                    handler.issue(server, KlocworkIssue.read(in));
+                }
+            }
+        }
+    }
+
+    public static Issues read(File file) throws IOException {
+        try (DataInputStream in = open(file)) {
+            ArrayList<KlocworkIssue> localIssues = readIssues(in);
+            ArrayList<KlocworkIssue> serverIssues = readIssues(in);
+            return new Issues(localIssues, serverIssues);
+        }
+    }
+
+    private static DataInputStream open(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+            new GZIPInputStream(Files.newInputStream(file.toPath()))));
+        try {
+            if (in.readInt() != MAGIC || in.readByte() != FORMAT_VERSION) {
+                throw new IOException("Unsupported dashboard file " + file.getPath());
+            }
+        } catch (IOException ex) {
+            in.close();
+            throw ex;
+        }
+        return in;
+    }
+
+    private static void writeIssues(DataOutputStream out, KlocworkIssueSet issues) throws IOException {
+        out.writeInt(issues.size());
+        for (KlocworkIssue issue : issues) {
+            issue.write(out);
+        }
+    }
+
+    private static ArrayList<KlocworkIssue> readIssues(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        ArrayList<KlocworkIssue> issues = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            issues.add(KlocworkIssue.read(in));
+        }
+        return issues;
+    }
+}
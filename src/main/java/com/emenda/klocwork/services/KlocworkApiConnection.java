@@ -78,8 +78,20 @@ public class KlocworkApiConnection {
 	}
 
 	public JSONArray sendRequest(String request) throws IOException {
-
         JSONArray response = new JSONArray();
+        send(request, response, null);
+        return response;
+	}
+
+    /*
+     * Writes the issues returned by the request to out as they are read, one
+     * JSON object per line, rather than collecting them
+     */
+	public void sendRequest(String request, Writer out) throws IOException {
+        send(request, null, out);
+	}
+
+	private void send(String request, JSONArray response, Writer out) throws IOException {
         String errorMsg = "";
 
         request += "&user=" + user;
@@ -108,7 +120,10 @@ public class KlocworkApiConnection {
 
                 String line;
                 while (null != (line = buf.readLine())) {
-                    if (success) {
+                    if (success && out != null) {
+                        out.write(line);
+                        out.write('\n');
+                    } else if (success) {
                         response.add(JSONObject.fromObject(line));
                     } else {
                         errorMsg += line + "\n";
@@ -143,7 +158,6 @@ public class KlocworkApiConnection {
                 "Return: " + errorMsg
             );
         }
-        return response;
 	}
 
 
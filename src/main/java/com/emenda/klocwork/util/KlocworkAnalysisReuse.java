@@ -0,0 +1,235 @@
+package com.emenda.klocwork.util;
+
+import com.emenda.klocwork.KlocworkConstants;
+import hudson.FilePath;
+import hudson.model.Run;
+import jenkins.security.MasterToSlaveCallable;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/*
+ * The list output of the last good analysis of a job on an agent, kept with
+ * a fingerprint of the analysis inputs. A build whose inputs have the same
+ * fingerprint (e.g. a re-triggered build) reuses the output instead of
+ * running the analysis again.
+ *
+ * The fingerprint and the output are kept in one gzip file so that they are
+ * always replaced together.
+ */
+public class KlocworkAnalysisReuse {
+
+    private static final String FORMAT_VERSION = "1";
+    private static final String ENTRY_SUFFIX = ".gz";
+
+    private final FilePath cacheDir;
+    private final FilePath entry;
+
+    private KlocworkAnalysisReuse(FilePath cacheDir, String key) {
+        this.cacheDir = cacheDir;
+        this.entry = cacheDir.child(key + ENTRY_SUFFIX);
+    }
+
+    /*
+     * Returns the entry for the given job and report file, or null if the
+     * agent has no root directory to keep it in
+     */
+    public static KlocworkAnalysisReuse forReport(Run<?, ?> build, FilePath workspace, FilePath xmlReport) {
+        FilePath cacheDir = KlocworkUtil.getAgentCacheDir(workspace,
+            KlocworkConstants.ANALYSIS_REUSE_CACHE_DIR);
+        if (cacheDir == null) {
+            return null;
+        }
+        MessageDigest digest = KlocworkResultCache.newDigest();
+        digest.update(build.getParent().getFullName().getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(xmlReport.getRemote().getBytes(StandardCharsets.UTF_8));
+        return new KlocworkAnalysisReuse(cacheDir,
+            KlocworkResultCache.toHex(digest.digest()).substring(0, 32));
+    }
+
+    /*
+     * Returns a callable computing the fingerprint on the agent. values are
+     * the analysis settings, files the sources to analyse (or null for the
+     * whole build specification)
+     */
+    public static Fingerprint fingerprint(List<String> values, List<String> files,
+                                          String workspace, String buildSpec, String indexFile,
+                                          String settingsDir) {
+        return new Fingerprint(values, files, workspace, buildSpec, indexFile, settingsDir);
+    }
+
+    /*
+     * Returns the list output stored with the given fingerprint, or null if
+     * there is none
+     */
+    public ByteArrayOutputStream restore(String fingerprint) throws InterruptedException {
+        try {
+            if (!entry.exists()) {
+                return null;
+            }
+            try (InputStream in = new GZIPInputStream(entry.read())) {
+                if (!fingerprint.equals(readLine(in))) {
+                    return null;
+                }
+                ByteArrayOutputStream listOutput = new ByteArrayOutputStream();
+                byte[] buffer = new byte[64 * 1024];
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    listOutput.write(buffer, 0, read);
+                }
+                // recently used entries are kept when the cache is pruned
+                entry.touch(System.currentTimeMillis());
+                return listOutput;
+            }
+        } catch (IOException ex) {
+            // a corrupt or concurrently replaced entry is a miss
+            return null;
+        }
+    }
+
+    /*
+     * Stores the list output of a good analysis. Failures are ignored as the
+     * entry is only a cache
+     */
+    public void save(String fingerprint, ByteArrayOutputStream listOutput) throws InterruptedException {
+        FilePath tmpFile = null;
+        try {
+            cacheDir.mkdirs();
+            tmpFile = cacheDir.createTempFile(entry.getName(), ".tmp");
+            try (OutputStream out = new GZIPOutputStream(tmpFile.write())) {
+                out.write(fingerprint.getBytes(StandardCharsets.UTF_8));
+                out.write('\n');
+                listOutput.writeTo(out);
+            }
+            tmpFile.renameTo(entry);
+            prune();
+        } catch (IOException ex) {
+            if (tmpFile != null) {
+                try {
+                    tmpFile.delete();
+                } catch (IOException ignored) {
+                    // nothing more we can do
+                }
+            }
+        }
+    }
+
+    /*
+     * Removes the least recently used entries beyond MAX_REUSED_ANALYSES
+     */
+    private void prune() throws IOException, InterruptedException {
+        List<Map.Entry<FilePath, Long>> entries = new ArrayList<Map.Entry<FilePath, Long>>();
+        for (FilePath child : cacheDir.list()) {
+            if (child.getName().endsWith(ENTRY_SUFFIX)) {
+                entries.add(new AbstractMap.SimpleEntry<FilePath, Long>(child, child.lastModified()));
+            }
+        }
+        if (entries.size() <= KlocworkConstants.MAX_REUSED_ANALYSES) {
+            return;
+        }
+        // most recently used first
+        Collections.sort(entries, new Comparator<Map.Entry<FilePath, Long>>() {
+            public int compare(Map.Entry<FilePath, Long> a, Map.Entry<FilePath, Long> b) {
+                return b.getValue().compareTo(a.getValue());
+            }
+        });
+        for (int i = KlocworkConstants.MAX_REUSED_ANALYSES; i < entries.size(); i++) {
+            entries.get(i).getKey().delete();
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            line.write(b);
+        }
+        return new String(line.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /*
+     * Hashes the analysis settings, the build specification, the local
+     * project settings (.kwps, updated from the server by the set command),
+     * the git working tree and the content of the sources to analyse.
+     *
+     * The analysis also reads headers and other files not listed in the
+     * build specification, so the tracked files of the working tree are part
+     * of the fingerprint: the HEAD tree plus every tracked file differing
+     * from it. Untracked files are not, as the workspace also holds the local
+     * project, reports and listings the analysis rewrites on every run; the
+     * sources of the build specification are hashed one by one whether they
+     * are tracked or not (e.g. generated). Without a git
+     * repository there is no cheap way to tell that nothing changed and
+     * the fingerprint fails, so the analysis runs.
+     */
+    public static class Fingerprint extends MasterToSlaveCallable<String, IOException> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<String> values;
+        private final List<String> files;
+        private final String workspace;
+        private final String buildSpec;
+        private final String indexFile;
+        private final String settingsDir;
+
+        Fingerprint(List<String> values, List<String> files, String workspace, String buildSpec,
+                    String indexFile, String settingsDir) {
+            this.values = values;
+            this.files = files;
+            this.workspace = workspace;
+            this.buildSpec = buildSpec;
+            this.indexFile = indexFile;
+            this.settingsDir = settingsDir;
+        }
+
+        public String call() throws IOException {
+            MessageDigest digest = KlocworkResultCache.newDigest();
+            digest.update(FORMAT_VERSION.getBytes(StandardCharsets.UTF_8));
+            for (String value : values) {
+                digest.update((byte) 0);
+                digest.update(value.getBytes(StandardCharsets.UTF_8));
+            }
+            try {
+                digest.update(KlocworkGitChangeDetector.hashWorkingTree(workspace));
+            } catch (IOException ex) {
+                throw new IOException("Analysis is only reused in a git working tree: " + ex.getMessage(), ex);
+            }
+            Path buildSpecPath = Paths.get(buildSpec);
+            digest.update(KlocworkResultCache.hashFile(buildSpecPath));
+            digest.update(KlocworkResultCache.hashDirectory(Paths.get(settingsDir)));
+
+            List<String> sources = files;
+            if (sources == null) {
+                sources = new ArrayList<String>(KlocworkBuildSpecIndexStore.getIndex(
+                    buildSpecPath, (indexFile != null) ? Paths.get(indexFile) : null).getFiles());
+            }
+            for (String source : sources) {
+                digest.update(source.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                Path sourcePath = Paths.get(source);
+                if (sourcePath.toFile().isFile()) {
+                    digest.update(KlocworkResultCache.hashFile(sourcePath));
+                }
+            }
+            return KlocworkResultCache.toHex(digest.digest());
+        }
+    }
+}
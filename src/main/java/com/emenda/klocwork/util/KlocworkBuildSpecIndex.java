@@ -0,0 +1,215 @@
+package com.emenda.klocwork.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Index of the source files found in a build specification, so that each file
+ * from a diff file list can be matched with a single hash lookup.
+ *
+ * Entries containing a backslash (Windows paths) are matched case insensitively
+ * because the diff list returned by e.g. svn can use a different case, all other
+ * entries are matched exactly. Directory and glob entries are resolved through
+ * path tries which are only built when needed.
+ *
+ * Each file also keeps a digest of the build specification lines compiling
+ * it, so that results keyed on how a file is compiled do not need the build
+ * specification to be read again. The digest is the sum of the hashes of the
+ * lines, which does not depend on the order the lines were read in. Digests
+ * are only kept by an index created with them (see KlocworkBuildSpecReader).
+ */
+public class KlocworkBuildSpecIndex implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final int DIGEST_SIZE = 16;
+
+    private final HashSet<String> exactFiles = new HashSet<String>();
+    // lower-cased path -> path as found in the build specification
+    private final HashMap<String, String> caseFoldedFiles = new HashMap<String, String>();
+    // path as found in the build specification -> compile line digest
+    private final HashMap<String, long[]> compileDigests = new HashMap<String, long[]>();
+    private final boolean hasCompileDigests;
+    private transient KlocworkPathTrie exactTrie;
+    private transient KlocworkPathTrie caseFoldedTrie;
+
+    public KlocworkBuildSpecIndex() {
+        this(false);
+    }
+
+    public KlocworkBuildSpecIndex(boolean hasCompileDigests) {
+        this.hasCompileDigests = hasCompileDigests;
+    }
+
+    /*
+     * Adds a file compiled by a build specification line, lineHash being a
+     * hash of that line of at least DIGEST_SIZE bytes, or null if the index
+     * has no compile digests
+     */
+    public void add(String file, byte[] lineHash) {
+        if (file.contains("\\")) {
+            String existing = caseFoldedFiles.get(file.toLowerCase());
+            if (existing != null) {
+                file = existing;
+            } else {
+                caseFoldedFiles.put(file.toLowerCase(), file);
+            }
+        } else {
+            exactFiles.add(file);
+        }
+        if (hasCompileDigests) {
+            addDigest(file, ByteBuffer.wrap(lineHash).getLong(), ByteBuffer.wrap(lineHash).getLong(8));
+        }
+        exactTrie = null;
+        caseFoldedTrie = null;
+    }
+
+    public void addAll(KlocworkBuildSpecIndex index) {
+        exactFiles.addAll(index.exactFiles);
+        for (String file : index.caseFoldedFiles.values()) {
+            if (!caseFoldedFiles.containsKey(file.toLowerCase())) {
+                caseFoldedFiles.put(file.toLowerCase(), file);
+            }
+        }
+        for (Map.Entry<String, long[]> digest : index.compileDigests.entrySet()) {
+            String file = digest.getKey();
+            if (file.contains("\\")) {
+                file = caseFoldedFiles.get(file.toLowerCase());
+            }
+            addDigest(file, digest.getValue()[0], digest.getValue()[1]);
+        }
+        exactTrie = null;
+        caseFoldedTrie = null;
+    }
+
+    public boolean contains(String file) {
+        return exactFiles.contains(file) ||
+            (!caseFoldedFiles.isEmpty() && caseFoldedFiles.containsKey(file.toLowerCase()));
+    }
+
+    public boolean hasCompileDigests() {
+        return hasCompileDigests;
+    }
+
+    /*
+     * Returns the digest of the build specification lines compiling the file,
+     * or null if the file is not in the build specification or the index has
+     * no compile digests
+     */
+    public byte[] getCompileDigest(String file) {
+        long[] digest = compileDigests.get(file);
+        if (digest == null && !caseFoldedFiles.isEmpty()) {
+            String caseFolded = caseFoldedFiles.get(file.toLowerCase());
+            digest = (caseFolded != null) ? compileDigests.get(caseFolded) : null;
+        }
+        if (digest == null) {
+            return null;
+        }
+        return ByteBuffer.allocate(DIGEST_SIZE).putLong(digest[0]).putLong(digest[1]).array();
+    }
+
+    /*
+     * Adds all build specification files below the given directory to files
+     */
+    public void collectFiles(String dir, Collection<String> files) {
+        buildTries();
+        exactTrie.collectFiles(dir, files);
+        caseFoldedTrie.collectFiles(dir, files);
+    }
+
+    /*
+     * Adds all build specification files below baseDir matching the glob to files
+     */
+    public void collectGlobMatches(String baseDir, String glob, Collection<String> files) {
+        buildTries();
+        exactTrie.collectGlobMatches(baseDir, glob, files);
+        caseFoldedTrie.collectGlobMatches(baseDir, glob, files);
+    }
+
+    private void buildTries() {
+        if (exactTrie != null) {
+            return;
+        }
+        exactTrie = new KlocworkPathTrie(false);
+        for (String file : exactFiles) {
+            exactTrie.add(file);
+        }
+        caseFoldedTrie = new KlocworkPathTrie(true);
+        for (String file : caseFoldedFiles.values()) {
+            caseFoldedTrie.add(file);
+        }
+    }
+
+    /*
+     * Returns all files as they appear in the build specification
+     */
+    public List<String> getFiles() {
+        List<String> files = new ArrayList<String>(size());
+        files.addAll(exactFiles);
+        files.addAll(caseFoldedFiles.values());
+        return files;
+    }
+
+    public int size() {
+        return exactFiles.size() + caseFoldedFiles.size();
+    }
+
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeBoolean(hasCompileDigests);
+        writeFiles(out, exactFiles);
+        writeFiles(out, caseFoldedFiles.values());
+    }
+
+    public static KlocworkBuildSpecIndex readFrom(DataInputStream in) throws IOException {
+        KlocworkBuildSpecIndex index = new KlocworkBuildSpecIndex(in.readBoolean());
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            index.exactFiles.add(index.readFile(in));
+        }
+        count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String file = index.readFile(in);
+            index.caseFoldedFiles.put(file.toLowerCase(), file);
+        }
+        return index;
+    }
+
+    private void writeFiles(DataOutputStream out, Collection<String> files) throws IOException {
+        out.writeInt(files.size());
+        for (String file : files) {
+            out.writeUTF(file);
+            if (hasCompileDigests) {
+                long[] digest = compileDigests.get(file);
+                out.writeLong(digest[0]);
+                out.writeLong(digest[1]);
+            }
+        }
+    }
+
+    private String readFile(DataInputStream in) throws IOException {
+        String file = in.readUTF();
+        if (hasCompileDigests) {
+            compileDigests.put(file, new long[] { in.readLong(), in.readLong() });
+        }
+        return file;
+    }
+
+    private void addDigest(String file, long high, long low) {
+        long[] digest = compileDigests.get(file);
+        if (digest == null) {
+            compileDigests.put(file, new long[] { high, low });
+        } else {
+            digest[0] += high;
+            digest[1] += low;
+        }
+    }
+}
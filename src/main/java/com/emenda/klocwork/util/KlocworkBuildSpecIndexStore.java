@@ -0,0 +1,111 @@
+package com.emenda.klocwork.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/*
+ * Keeps a KlocworkBuildSpecIndex on the agent between builds so that an
+ * unchanged build specification does not need to be parsed again. The stored
+ * index is only used if the path, size and modification time of the build
+ * specification still match the ones it was created from, and if it has
+ * compile digests when they are asked for.
+ */
+public class KlocworkBuildSpecIndexStore {
+
+    private static final int FORMAT_VERSION = 4;
+
+    private final Path storeFile;
+
+    public KlocworkBuildSpecIndexStore(Path storeFile) {
+        this.storeFile = storeFile;
+    }
+
+    /*
+     * Returns the index of the build specification, reusing the one stored in
+     * storeFile if it is up to date. No index is stored if storeFile is null
+     */
+    public static KlocworkBuildSpecIndex getIndex(Path buildSpec, Path storeFile) throws IOException {
+        return getIndex(buildSpec, storeFile, false);
+    }
+
+    /*
+     * As above, with the compile digests of the files if compileDigests is set
+     */
+    public static KlocworkBuildSpecIndex getIndex(Path buildSpec, Path storeFile,
+                                                  boolean compileDigests) throws IOException {
+        if (storeFile == null) {
+            return new KlocworkBuildSpecReader(buildSpec, compileDigests).read();
+        }
+        KlocworkBuildSpecIndexStore store = new KlocworkBuildSpecIndexStore(storeFile);
+        KlocworkBuildSpecIndex index = store.load(buildSpec);
+        if (index == null || (compileDigests && !index.hasCompileDigests())) {
+            index = new KlocworkBuildSpecReader(buildSpec, compileDigests).read();
+            store.save(buildSpec, index);
+        }
+        return index;
+    }
+
+    /*
+     * Returns the stored index, or null if there is none or it is out of date
+     */
+    public KlocworkBuildSpecIndex load(Path buildSpec) throws IOException {
+        if (!Files.exists(storeFile)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(storeFile))))) {
+            if (in.readInt() != FORMAT_VERSION
+                    || !in.readUTF().equals(getBuildSpecKey(buildSpec))
+                    || in.readLong() != Files.size(buildSpec)
+                    || in.readLong() != Files.getLastModifiedTime(buildSpec).toMillis()) {
+                return null;
+            }
+            return KlocworkBuildSpecIndex.readFrom(in);
+        } catch (IOException ex) {
+            // a corrupt or truncated index is simply rebuilt
+            return null;
+        }
+    }
+
+    /*
+     * Stores the index, failures are ignored as the index is only a cache
+     */
+    public void save(Path buildSpec, KlocworkBuildSpecIndex index) {
+        Path tmpFile = null;
+        try {
+            Path storeDir = storeFile.toAbsolutePath().getParent();
+            Files.createDirectories(storeDir);
+            // concurrent builds each write their own file, the last move wins
+            tmpFile = Files.createTempFile(storeDir, storeFile.getFileName().toString(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new GZIPOutputStream(Files.newOutputStream(tmpFile))))) {
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(getBuildSpecKey(buildSpec));
+                out.writeLong(Files.size(buildSpec));
+                out.writeLong(Files.getLastModifiedTime(buildSpec).toMillis());
+                index.writeTo(out);
+            }
+            Files.move(tmpFile, storeFile, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ex) {
+            try {
+                if (tmpFile != null) {
+                    Files.deleteIfExists(tmpFile);
+                }
+            } catch (IOException ignored) {
+                // nothing more we can do
+            }
+        }
+    }
+
+    private static String getBuildSpecKey(Path buildSpec) {
+        return buildSpec.toAbsolutePath().normalize().toString();
+    }
+}
@@ -16,12 +16,40 @@ public class KlocworkBuildSpecParser extends MasterToSlaveCallable<List<String>,
     private final List<String> fileList;
     private final String buildSpec;
     private final String diffFileList;
+    private final String indexFile;
+    // directory entries ("src/net/") of the diff file list
+    private final List<String> dirList;
+    // glob entries of the diff file list, as {base directory, pattern}
+    private final List<String[]> globList;
+    // detects the changed files itself instead of reading diffFileList
+    private final KlocworkGitChangeDetector changeDetector;
 
     public KlocworkBuildSpecParser(String workspace, String diffFileList, String buildSpec) throws IOException {
+        this(workspace, diffFileList, buildSpec, null);
+    }
+
+    public KlocworkBuildSpecParser(String workspace, String diffFileList, String buildSpec,
+                                   String indexFile) throws IOException {
         this.workspace = workspace;
         this.fileList = new ArrayList<String>();
         this.buildSpec = buildSpec;
         this.diffFileList = diffFileList;
+        this.indexFile = indexFile;
+        this.dirList = new ArrayList<String>();
+        this.globList = new ArrayList<String[]>();
+        this.changeDetector = null;
+    }
+
+    public KlocworkBuildSpecParser(String workspace, KlocworkGitChangeDetector changeDetector,
+                                   String buildSpec, String indexFile) {
+        this.workspace = workspace;
+        this.fileList = new ArrayList<String>();
+        this.buildSpec = buildSpec;
+        this.diffFileList = null;
+        this.indexFile = indexFile;
+        this.dirList = new ArrayList<String>();
+        this.globList = new ArrayList<String[]>();
+        this.changeDetector = changeDetector;
     }
 
     private void populateFileList() throws IOException {
@@ -34,7 +62,7 @@ public class KlocworkBuildSpecParser extends MasterToSlaveCallable<List<String>,
         if (Files.exists(diffFileListPath)) {
             try (Scanner scanner = new Scanner(diffFileListPath)) {
                 while (scanner.hasNextLine()) {
-                    fileList.add(diffFileListPath.resolveSibling(scanner.nextLine().trim()).normalize().toString());
+                    addDiffEntry(diffFileListPath, scanner.nextLine().trim());
                 }
             }
         } else {
@@ -44,59 +72,56 @@ public class KlocworkBuildSpecParser extends MasterToSlaveCallable<List<String>,
         }
     }
 
-    public List<String> call() throws IOException {
-        List<String> validFiles = new ArrayList<String>();
-        HashSet<String> buildSpecFiles = new HashSet<String>(); // optimisation for initial capacity?
+    /*
+     * Entries ending with a separator select every build spec file below that
+     * directory, entries containing '*' or '?' are globs which are split into
+     * the literal directory prefix and the pattern matched below it
+     */
+    private void addDiffEntry(Path diffFileListPath, String entry) {
+        if (KlocworkPathTrie.isGlob(entry)) {
+            int wildcard = Math.min(indexOfOrLength(entry, '*'), indexOfOrLength(entry, '?'));
+            int separator = Math.max(entry.lastIndexOf('/', wildcard), entry.lastIndexOf('\\', wildcard));
+            String baseDir = diffFileListPath.resolveSibling(
+                entry.substring(0, separator + 1)).normalize().toString();
+            globList.add(new String[] { baseDir, entry.substring(separator + 1) });
+        } else if (entry.endsWith("/") || entry.endsWith("\\")) {
+            dirList.add(diffFileListPath.resolveSibling(entry).normalize().toString());
+        } else {
+            fileList.add(diffFileListPath.resolveSibling(entry).normalize().toString());
+        }
+    }
 
-        // read list of files from a file
-        populateFileList();
+    private static int indexOfOrLength(String entry, char c) {
+        int index = entry.indexOf(c);
+        return (index < 0) ? entry.length() : index;
+    }
 
-        try (Scanner scanner = new Scanner(Paths.get(buildSpec))) {
-            while (scanner.hasNextLine()) {
-                processBuildSpecLine(scanner.nextLine(), buildSpecFiles);
-            }
+    public List<String> call() throws IOException {
+        // directory and glob entries can overlap each other and plain entries
+        Set<String> validFiles = new LinkedHashSet<String>();
+
+        if (changeDetector != null) {
+            // paths from the detector are already absolute and normalized
+            fileList.addAll(changeDetector.call());
+        } else {
+            // read list of files from a file
+            populateFileList();
         }
+
+        // reuse the index from a previous build if the build spec is unchanged
+        KlocworkBuildSpecIndex buildSpecFiles = KlocworkBuildSpecIndexStore.getIndex(
+            Paths.get(buildSpec), (indexFile != null) ? Paths.get(indexFile) : null);
         for (String file : fileList) {
-                //The compare method is case sensitive and on windows should be handled insensitively due to issues were
-                //the diff list returned from the svn has a different case
-                for (String bsFile : buildSpecFiles) {
-                if ((bsFile.contains("\\") && bsFile.toLowerCase().equals(file.toLowerCase()))
-                                || (!bsFile.contains("\\") && bsFile.equals(file))) {
-                    validFiles.add(file);
-                }
+            if (buildSpecFiles.contains(file)) {
+                validFiles.add(file);
             }
         }
-        return validFiles;
-    }
-
-    private void processBuildSpecLine(String line, HashSet<String> buildSpecFiles) throws IOException {
-        Scanner scanner = new Scanner(line);
-        scanner.useDelimiter(";");
-        if (scanner.hasNext()) {
-            String tag = scanner.next();
-            Path workingDir;
-            String sourceFile;
-            try {
-                switch (tag) {
-                    case "compile":
-                        workingDir = Paths.get(scanner.next());
-                        scanner.next();
-                        scanner.next(); // skip compiler and output file
-                        sourceFile = scanner.next();
-                        buildSpecFiles.add(workingDir.resolve(sourceFile).normalize().toString());
-                        break;
-                    case "jcompile":
-                        scanner.next();
-                        workingDir = Paths.get(scanner.next());
-                        sourceFile = scanner.next();
-                        buildSpecFiles.add(workingDir.resolve(sourceFile).normalize().toString());
-                        break;
-                    default:
-                        return;
-                }
-            } catch (NoSuchElementException e) {
-                return;
-            }
+        for (String dir : dirList) {
+            buildSpecFiles.collectFiles(dir, validFiles);
+        }
+        for (String[] glob : globList) {
+            buildSpecFiles.collectGlobMatches(glob[0], glob[1], validFiles);
         }
+        return new ArrayList<String>(validFiles);
     }
 }
@@ -0,0 +1,246 @@
+package com.emenda.klocwork.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * Streams a build specification (kwinject.out) into a KlocworkBuildSpecIndex.
+ *
+ * Lines are read as bytes and split on ';' by hand, only the fields needed to
+ * locate the source file of compile and jcompile lines are decoded. If asked
+ * for, the bytes of those lines are hashed for the compile digest of their
+ * file; this is only needed by the result cache. Large
+ * build specifications are split into chunks at line boundaries which are
+ * parsed in parallel and merged afterwards.
+ */
+public class KlocworkBuildSpecReader {
+
+    // build specifications at least this large are parsed in parallel
+    private static final long PARALLEL_THRESHOLD = 64L * 1024 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // compile;<working dir>;<compiler>;<output>;<source>;...
+    // jcompile;<x>;<working dir>;<source>;...
+    private static final int MAX_FIELDS = 5;
+    private static final byte[] COMPILE_TAG = "compile".getBytes(Charset.forName("US-ASCII"));
+    private static final byte[] JCOMPILE_TAG = "jcompile".getBytes(Charset.forName("US-ASCII"));
+
+    private final Path buildSpec;
+    private final Charset charset;
+    private final boolean compileDigests;
+
+    public KlocworkBuildSpecReader(Path buildSpec) {
+        this(buildSpec, false);
+    }
+
+    public KlocworkBuildSpecReader(Path buildSpec, boolean compileDigests) {
+        this.buildSpec = buildSpec;
+        this.charset = Charset.defaultCharset();
+        this.compileDigests = compileDigests;
+    }
+
+    public KlocworkBuildSpecIndex read() throws IOException {
+        try (FileChannel channel = FileChannel.open(buildSpec, StandardOpenOption.READ)) {
+            long size = channel.size();
+            int threads = Runtime.getRuntime().availableProcessors();
+            if (size < PARALLEL_THRESHOLD || threads < 2) {
+                KlocworkBuildSpecIndex index = new KlocworkBuildSpecIndex(compileDigests);
+                new ChunkParser(index).parse(channel, 0, size);
+                return index;
+            }
+            return readParallel(channel, size, threads);
+        }
+    }
+
+    private KlocworkBuildSpecIndex readParallel(final FileChannel channel, long size, int threads)
+                                        throws IOException {
+        long[] bounds = getChunkBounds(channel, size, threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<KlocworkBuildSpecIndex>> chunks = new ArrayList<>();
+            for (int i = 0; i < bounds.length - 1; i++) {
+                final long start = bounds[i];
+                final long end = bounds[i + 1];
+                chunks.add(executor.submit(new Callable<KlocworkBuildSpecIndex>() {
+                    public KlocworkBuildSpecIndex call() throws IOException {
+                        KlocworkBuildSpecIndex index = new KlocworkBuildSpecIndex(compileDigests);
+                        new ChunkParser(index).parse(channel, start, end);
+                        return index;
+                    }
+                }));
+            }
+            KlocworkBuildSpecIndex index = new KlocworkBuildSpecIndex(compileDigests);
+            for (Future<KlocworkBuildSpecIndex> chunk : chunks) {
+                index.addAll(chunk.get());
+            }
+            return index;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading build specification " + buildSpec, ex);
+        } catch (ExecutionException ex) {
+            throw new IOException("Failed to read build specification " + buildSpec +
+                ": " + ex.getCause().getMessage(), ex.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /*
+     * Splits the file into roughly equal chunks, moving each boundary to the
+     * start of the next line
+     */
+    private long[] getChunkBounds(FileChannel channel, long size, int chunks) throws IOException {
+        long[] bounds = new long[chunks + 1];
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        for (int i = 1; i < chunks; i++) {
+            long position = Math.max(size * i / chunks, bounds[i - 1]);
+            boolean found = false;
+            while (!found && position < size) {
+                buffer.clear();
+                int read = channel.read(buffer, position);
+                if (read <= 0) {
+                    break;
+                }
+                for (int j = 0; j < read; j++) {
+                    if (buffer.get(j) == '\n') {
+                        position += j + 1;
+                        found = true;
+                        break;
+                    }
+                }
+                if (!found) {
+                    position += read;
+                }
+            }
+            bounds[i] = Math.min(position, size);
+        }
+        bounds[chunks] = size;
+        return bounds;
+    }
+
+    private class ChunkParser {
+
+        private final KlocworkBuildSpecIndex index;
+        private final int[] fieldStarts = new int[MAX_FIELDS];
+        private final int[] fieldEnds = new int[MAX_FIELDS];
+        private final MessageDigest lineDigest = compileDigests ? KlocworkResultCache.newDigest() : null;
+        private byte[] line = new byte[1024];
+        // consecutive compile lines usually share the same working directory
+        private String lastWorkingDir;
+        private Path lastWorkingDirPath;
+
+        ChunkParser(KlocworkBuildSpecIndex index) {
+            this.index = index;
+        }
+
+        void parse(FileChannel channel, long start, long end) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            byte[] data = buffer.array();
+            int lineLength = 0;
+            long position = start;
+            while (position < end) {
+                buffer.clear();
+                buffer.limit((int) Math.min(BUFFER_SIZE, end - position));
+                int read = channel.read(buffer, position);
+                if (read <= 0) {
+                    break;
+                }
+                position += read;
+                for (int i = 0; i < read; i++) {
+                    byte b = data[i];
+                    if (b == '\n') {
+                        processLine(lineLength);
+                        lineLength = 0;
+                    } else {
+                        if (lineLength == line.length) {
+                            line = Arrays.copyOf(line, line.length * 2);
+                        }
+                        line[lineLength++] = b;
+                    }
+                }
+            }
+            if (lineLength > 0) {
+                processLine(lineLength);
+            }
+        }
+
+        private void processLine(int length) {
+            if (length > 0 && line[length - 1] == '\r') {
+                length--;
+            }
+            int fields = splitFields(length);
+            if (fields == 0) {
+                return;
+            }
+            if (fields == MAX_FIELDS && isTag(COMPILE_TAG)) {
+                addSourceFile(getField(1), getField(4), length);
+            } else if (fields >= 4 && isTag(JCOMPILE_TAG)) {
+                addSourceFile(getField(2), getField(3), length);
+            }
+        }
+
+        /*
+         * Records the start and end of the first MAX_FIELDS ';' separated
+         * fields. A trailing empty field does not count, as with a Scanner
+         * using ';' as delimiter
+         */
+        private int splitFields(int length) {
+            int fields = 0;
+            int fieldStart = 0;
+            for (int i = 0; i <= length && fields < MAX_FIELDS; i++) {
+                if (i == length || line[i] == ';') {
+                    fieldStarts[fields] = fieldStart;
+                    fieldEnds[fields] = i;
+                    fields++;
+                    fieldStart = i + 1;
+                }
+            }
+            if (fields > 0 && fieldStarts[fields - 1] == length) {
+                fields--;
+            }
+            return fields;
+        }
+
+        private boolean isTag(byte[] tag) {
+            if (fieldEnds[0] - fieldStarts[0] != tag.length) {
+                return false;
+            }
+            for (int i = 0; i < tag.length; i++) {
+                if (line[fieldStarts[0] + i] != tag[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private String getField(int field) {
+            return new String(line, fieldStarts[field], fieldEnds[field] - fieldStarts[field], charset);
+        }
+
+        private void addSourceFile(String workingDir, String sourceFile, int length) {
+            if (!workingDir.equals(lastWorkingDir)) {
+                lastWorkingDirPath = Paths.get(workingDir);
+                lastWorkingDir = workingDir;
+            }
+            byte[] lineHash = null;
+            if (lineDigest != null) {
+                lineDigest.update(line, 0, length);
+                lineHash = lineDigest.digest();
+            }
+            index.add(lastWorkingDirPath.resolve(sourceFile).normalize().toString(), lineHash);
+        }
+    }
+}
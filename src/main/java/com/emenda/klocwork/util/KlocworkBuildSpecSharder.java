@@ -0,0 +1,96 @@
+package com.emenda.klocwork.util;
+
+import jenkins.security.MasterToSlaveCallable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/*
+ * Splits the source files of a build specification into shardCount shards of
+ * roughly equal size and returns the files of shard shardIndex (0 based).
+ *
+ * The file size is used as an estimate of the analysis time. Files are
+ * assigned largest first to the shard with the smallest total so far (longest
+ * processing time first), with ties broken on the path so that every shard
+ * computes the same partitioning independently.
+ */
+public class KlocworkBuildSpecSharder extends MasterToSlaveCallable<List<String>, IOException> {
+
+    private final String buildSpec;
+    private final String indexFile;
+    private final int shardCount;
+    private final int shardIndex;
+
+    public KlocworkBuildSpecSharder(String buildSpec, String indexFile, int shardCount, int shardIndex) {
+        this.buildSpec = buildSpec;
+        this.indexFile = indexFile;
+        this.shardCount = shardCount;
+        this.shardIndex = shardIndex;
+    }
+
+    public List<String> call() throws IOException {
+        if (shardIndex < 0 || shardIndex >= shardCount) {
+            throw new IOException("Shard index " + Integer.toString(shardIndex) +
+                " is out of range for " + Integer.toString(shardCount) + " shards");
+        }
+        KlocworkBuildSpecIndex index = KlocworkBuildSpecIndexStore.getIndex(
+            Paths.get(buildSpec), (indexFile != null) ? Paths.get(indexFile) : null);
+
+        List<SourceFile> files = new ArrayList<SourceFile>(index.size());
+        for (String file : index.getFiles()) {
+            // missing or empty files still cost something to analyse
+            files.add(new SourceFile(file, Math.max(new File(file).length(), 1L)));
+        }
+        Collections.sort(files, new Comparator<SourceFile>() {
+            public int compare(SourceFile a, SourceFile b) {
+                int bySize = Long.compare(b.size, a.size);
+                return (bySize != 0) ? bySize : a.path.compareTo(b.path);
+            }
+        });
+
+        PriorityQueue<Shard> shards = new PriorityQueue<Shard>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            shards.add(new Shard(i));
+        }
+        List<String> shardFiles = new ArrayList<String>();
+        for (SourceFile file : files) {
+            Shard shard = shards.poll();
+            if (shard.index == shardIndex) {
+                shardFiles.add(file.path);
+            }
+            shard.size += file.size;
+            shards.add(shard);
+        }
+        return shardFiles;
+    }
+
+    private static class SourceFile {
+        private final String path;
+        private final long size;
+
+        SourceFile(String path, long size) {
+            this.path = path;
+            this.size = size;
+        }
+    }
+
+    private static class Shard implements Comparable<Shard> {
+        private final int index;
+        private long size = 0;
+
+        Shard(int index) {
+            this.index = index;
+        }
+
+        public int compareTo(Shard other) {
+            int bySize = Long.compare(size, other.size);
+            return (bySize != 0) ? bySize : Integer.compare(index, other.index);
+        }
+    }
+}
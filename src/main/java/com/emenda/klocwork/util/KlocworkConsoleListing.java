@@ -0,0 +1,89 @@
+package com.emenda.klocwork.util;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+ * Prints issues to the build console. In full mode every issue is printed.
+ * In summary mode only the first issueLimit issues are printed, followed by
+ * the per-severity totals, and the complete listing is written to the given
+ * writer instead (which the caller archives with the build).
+ */
+public class KlocworkConsoleListing {
+
+    private final PrintStream console;
+    private final boolean summary;
+    private final int issueLimit;
+    private final Writer fullListing;
+    private final Map<String, Integer> severityTotals = new TreeMap<>();
+    private final Map<String, Integer> statusTotals = new TreeMap<>();
+    private int issueCount = 0;
+
+    public KlocworkConsoleListing(PrintStream console) {
+        this.console = console;
+        this.summary = false;
+        this.issueLimit = Integer.MAX_VALUE;
+        this.fullListing = null;
+    }
+
+    public KlocworkConsoleListing(PrintStream console, int issueLimit, Writer fullListing) {
+        this.console = console;
+        this.summary = true;
+        this.issueLimit = issueLimit;
+        this.fullListing = fullListing;
+    }
+
+    public void addIssue(String severity, String line) throws IOException {
+        addIssue(severity, null, line);
+    }
+
+    public void addIssue(String severity, String status, String line) throws IOException {
+        issueCount++;
+        if (severity != null) {
+            severityTotals.put(severity, severityTotals.getOrDefault(severity, 0) + 1);
+        }
+        if (status != null) {
+            statusTotals.put(status, statusTotals.getOrDefault(status, 0) + 1);
+        }
+        if (issueCount <= issueLimit) {
+            console.println(line);
+        }
+        if (fullListing != null) {
+            fullListing.write(line);
+            fullListing.write(System.lineSeparator());
+        }
+    }
+
+    public void printSummary(String fullListingName) {
+        if (!summary) {
+            return;
+        }
+        if (issueCount > issueLimit) {
+            console.println("... " + Integer.toString(issueCount - issueLimit) +
+                " more issues, see " + fullListingName + " for the full listing");
+        }
+        console.println("Total issues: " + Integer.toString(issueCount));
+        for (Map.Entry<String, Integer> total : severityTotals.entrySet()) {
+            console.println("  " + total.getKey() + ": " + total.getValue().toString());
+        }
+    }
+
+    public boolean isSummary() {
+        return summary;
+    }
+
+    public int getIssueCount() {
+        return issueCount;
+    }
+
+    public Map<String, Integer> getSeverityTotals() {
+        return severityTotals;
+    }
+
+    public Map<String, Integer> getStatusTotals() {
+        return statusTotals;
+    }
+}
@@ -0,0 +1,94 @@
+package com.emenda.klocwork.util;
+
+/*
+ * Chooses the points of a long trend to draw, so that a chart of thousands of
+ * builds keeps its shape with a bounded number of points.
+ *
+ * The most recent half of the points is kept as is. The older history is
+ * reduced with the largest-triangle-three-buckets algorithm, which splits it
+ * into buckets and keeps from each the point forming the largest triangle with
+ * the point kept before it and the average of the next bucket, so peaks and
+ * drops survive.
+ */
+public class KlocworkDownsampler {
+
+    private KlocworkDownsampler() {
+    }
+
+    /*
+     * Returns the indexes, in ascending order, of the values to keep so that
+     * at most maxPoints remain. Values are given oldest first; when a chart has
+     * several series, pass their sum
+     */
+    public static int[] select(double[] values, int maxPoints) {
+        int size = values.length;
+        if (maxPoints <= 0 || size <= maxPoints) {
+            return range(0, size);
+        }
+        int recent = maxPoints / 2;
+        int older = size - recent;
+        int olderPoints = maxPoints - recent;
+        int[] kept = (olderPoints < 3) ? range(older - olderPoints, older) :
+            largestTriangleThreeBuckets(values, older, olderPoints);
+        int[] result = new int[kept.length + recent];
+        System.arraycopy(kept, 0, result, 0, kept.length);
+        for (int i = 0; i < recent; i++) {
+            result[kept.length + i] = older + i;
+        }
+        return result;
+    }
+
+    /*
+     * Reduces values[0, size) to points indexes, always keeping the first and
+     * last value
+     */
+    private static int[] largestTriangleThreeBuckets(double[] values, int size, int points) {
+        int[] result = new int[points];
+        double bucketSize = (double) (size - 2) / (points - 2);
+        int selected = 0;
+        result[0] = 0;
+        for (int bucket = 0; bucket < points - 2; bucket++) {
+            int start = (int) Math.floor(bucket * bucketSize) + 1;
+            int end = (int) Math.floor((bucket + 1) * bucketSize) + 1;
+
+            // average of the next bucket, or the last value for the last bucket
+            int nextStart = end;
+            int nextEnd = Math.min((int) Math.floor((bucket + 2) * bucketSize) + 1, size);
+            double averageX = 0;
+            double averageY = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                averageX += i;
+                averageY += values[i];
+            }
+            averageX /= Math.max(nextEnd - nextStart, 1);
+            averageY /= Math.max(nextEnd - nextStart, 1);
+            if (nextEnd <= nextStart) {
+                averageX = size - 1;
+                averageY = values[size - 1];
+            }
+
+            double maxArea = -1;
+            int next = start;
+            for (int i = start; i < end; i++) {
+                double area = Math.abs((selected - averageX) * (values[i] - values[selected]) -
+                    (selected - i) * (averageY - values[selected]));
+                if (area > maxArea) {
+                    maxArea = area;
+                    next = i;
+                }
+            }
+            result[bucket + 1] = next;
+            selected = next;
+        }
+        result[points - 1] = size - 1;
+        return result;
+    }
+
+    private static int[] range(int from, int to) {
+        int[] result = new int[Math.max(to - from, 0)];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = from + i;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,185 @@
+package com.emenda.klocwork.util;
+
+import jenkins.security.MasterToSlaveCallable;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.dircache.DirCacheIterator;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.treewalk.CanonicalTreeParser;
+import org.eclipse.jgit.treewalk.FileTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Lists the files changed in the working tree of a git repository since a
+ * given revision, the equivalent of "git diff --name-only <revision>", by
+ * reading the repository directly instead of running git.
+ *
+ * The revision, the index and the working tree are walked together. Only
+ * paths in the index are visited, so untracked and ignored directories (e.g.
+ * build output) are never entered, and the stat data of the index tells which
+ * working tree files need their content hashed. Renamed files are reported
+ * with their new path. Deleted files are left out as there is nothing to
+ * analyse.
+ */
+public class KlocworkGitChangeDetector extends MasterToSlaveCallable<List<String>, IOException> {
+
+    private static final int PREVIOUS_TREE = 0;
+    private static final int INDEX_TREE = 1;
+    private static final int WORKING_TREE = 2;
+
+    // only paths tracked in the index, as git diff does not report others
+    private static final TreeFilter IN_INDEX = new TreeFilter() {
+        public boolean include(TreeWalk walk) {
+            return walk.getTree(INDEX_TREE, DirCacheIterator.class) != null;
+        }
+
+        public boolean shouldBeRecursive() {
+            return false;
+        }
+
+        public TreeFilter clone() {
+            return this;
+        }
+    };
+
+    // paths tracked in the index or in the revision, so that untracked
+    // files (e.g. the local project, reports and other build outputs) are
+    // never entered
+    private static final TreeFilter TRACKED = new TreeFilter() {
+        public boolean include(TreeWalk walk) {
+            return walk.getTree(INDEX_TREE, DirCacheIterator.class) != null
+                || walk.getTree(PREVIOUS_TREE, CanonicalTreeParser.class) != null;
+        }
+
+        public boolean shouldBeRecursive() {
+            return false;
+        }
+
+        public TreeFilter clone() {
+            return this;
+        }
+    };
+
+    private final String workspace;
+    private final String previousCommit;
+
+    public KlocworkGitChangeDetector(String workspace, String previousCommit) {
+        this.workspace = workspace;
+        this.previousCommit = previousCommit;
+    }
+
+    /*
+     * Returns the absolute, normalized paths of the changed files
+     */
+    public List<String> call() throws IOException {
+        try (Repository repository = openRepository(workspace);
+             ObjectReader reader = repository.newObjectReader();
+             TreeWalk walk = newWalk(repository, reader, previousCommit, IN_INDEX)) {
+            Path workTree = repository.getWorkTree().toPath();
+            List<String> changedFiles = new ArrayList<String>();
+            while (walk.next()) {
+                ObjectId fileId = getWorkingTreeId(walk, reader);
+                if (fileId == null) {
+                    // deleted from the working tree
+                    continue;
+                }
+                CanonicalTreeParser previousFile = walk.getTree(PREVIOUS_TREE, CanonicalTreeParser.class);
+                if (previousFile == null || !previousFile.getEntryObjectId().equals(fileId)) {
+                    changedFiles.add(workTree.resolve(walk.getPathString()).normalize().toString());
+                }
+            }
+            return changedFiles;
+        }
+    }
+
+    /*
+     * Returns a hash of the state of the working tree containing workspace:
+     * the tree of HEAD and the path and content of every tracked file
+     * differing from it. Untracked files are left out, as the workspace holds
+     * the outputs of the analysis itself, which change on every run. Throws
+     * if there is no git repository
+     */
+    public static byte[] hashWorkingTree(String workspace) throws IOException {
+        try (Repository repository = openRepository(workspace);
+             ObjectReader reader = repository.newObjectReader();
+             TreeWalk walk = newWalk(repository, reader, "HEAD", TRACKED)) {
+            MessageDigest digest = KlocworkResultCache.newDigest();
+            digest.update(repository.resolve("HEAD^{tree}").name().getBytes(StandardCharsets.UTF_8));
+            while (walk.next()) {
+                ObjectId fileId = getWorkingTreeId(walk, reader);
+                CanonicalTreeParser headFile = walk.getTree(PREVIOUS_TREE, CanonicalTreeParser.class);
+                if (headFile != null && headFile.getEntryObjectId().equals(fileId)) {
+                    continue;
+                }
+                digest.update(walk.getPathString().getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                digest.update(((fileId != null) ? fileId.name() : "deleted").getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            return digest.digest();
+        }
+    }
+
+    private static Repository openRepository(String workspace) throws IOException {
+        FileRepositoryBuilder builder = new FileRepositoryBuilder().findGitDir(new File(workspace));
+        if (builder.getGitDir() == null) {
+            throw new IOException("No git repository found in " + workspace);
+        }
+        return builder.setMustExist(true).build();
+    }
+
+    /*
+     * Returns a recursive walk of the given revision, the index and the
+     * working tree
+     */
+    private static TreeWalk newWalk(Repository repository, ObjectReader reader, String revision,
+                                    TreeFilter filter) throws IOException {
+        ObjectId tree = repository.resolve(revision + "^{tree}");
+        if (tree == null) {
+            throw new IOException("Unable to resolve git revision " + revision);
+        }
+        CanonicalTreeParser revisionTree = new CanonicalTreeParser();
+        revisionTree.reset(reader, tree);
+
+        TreeWalk walk = new TreeWalk(repository, reader);
+        walk.addTree(revisionTree);
+        walk.addTree(new DirCacheIterator(repository.readDirCache()));
+        FileTreeIterator workingTree = new FileTreeIterator(repository);
+        walk.addTree(workingTree);
+        // unmodified files are recognised from the index stat data instead
+        // of being hashed
+        workingTree.setDirCacheIterator(walk, INDEX_TREE);
+        walk.setFilter(filter);
+        walk.setRecursive(true);
+        return walk;
+    }
+
+    /*
+     * Returns the object id of the content of the current working tree file,
+     * or null if it does not exist
+     */
+    private static ObjectId getWorkingTreeId(TreeWalk walk, ObjectReader reader) throws IOException {
+        FileTreeIterator file = walk.getTree(WORKING_TREE, FileTreeIterator.class);
+        if (file == null) {
+            return null;
+        }
+        DirCacheIterator index = walk.getTree(INDEX_TREE, DirCacheIterator.class);
+        if (index == null) {
+            // untracked
+            return file.getEntryObjectId();
+        }
+        DirCacheEntry indexEntry = index.getDirCacheEntry();
+        return file.isModified(indexEntry, true, reader) ? file.getEntryObjectId() : indexEntry.getObjectId();
+    }
+}
@@ -0,0 +1,154 @@
+package com.emenda.klocwork.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collection;
+
+/*
+ * Sorted set of Klocwork issue ids, stored in the build directory so that the
+ * issues of two builds can be compared without a server search.
+ *
+ * The file holds a header, the number of ids and the differences between
+ * consecutive ids as variable length integers (7 bits per byte), which takes
+ * one to two bytes per id for the densely numbered ids of a project.
+ */
+public class KlocworkIssueIdSet {
+
+    private static final int MAGIC = 0x4b574944; // "KWID"
+    private static final int FORMAT_VERSION = 1;
+
+    private final int[] ids;
+
+    private KlocworkIssueIdSet(int[] ids) {
+        this.ids = ids;
+    }
+
+    /*
+     * Creates the set from issue ids as returned by the web API, ids that are
+     * not positive numbers are left out
+     */
+    public static KlocworkIssueIdSet fromIds(Collection<String> issueIds) {
+        int[] ids = new int[issueIds.size()];
+        int count = 0;
+        for (String issueId : issueIds) {
+            try {
+                int id = Integer.parseInt(issueId.trim());
+                if (id > 0) {
+                    ids[count++] = id;
+                }
+            } catch (NumberFormatException ex) {
+                // not a server issue id
+            }
+        }
+        Arrays.sort(ids, 0, count);
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (unique == 0 || ids[i] != ids[unique - 1]) {
+                ids[unique++] = ids[i];
+            }
+        }
+        return new KlocworkIssueIdSet(Arrays.copyOf(ids, unique));
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public boolean contains(int id) {
+        return Arrays.binarySearch(ids, id) >= 0;
+    }
+
+    /*
+     * Returns the ids in this set that are not in other, in ascending order
+     */
+    public int[] difference(KlocworkIssueIdSet other) {
+        int[] result = new int[ids.length];
+        int count = 0;
+        int j = 0;
+        for (int id : ids) {
+            while (j < other.ids.length && other.ids[j] < id) {
+                j++;
+            }
+            if (j == other.ids.length || other.ids[j] != id) {
+                result[count++] = id;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    public void save(File file) throws IOException {
+        Path tmpFile = Files.createTempFile(file.getParentFile().toPath(), file.getName(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tmpFile)))) {
+                out.writeInt(MAGIC);
+                out.writeByte(FORMAT_VERSION);
+                writeVarInt(out, ids.length);
+                int previous = 0;
+                for (int id : ids) {
+                    writeVarInt(out, id - previous);
+                    previous = id;
+                }
+            }
+            Files.move(tmpFile, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmpFile);
+        }
+    }
+
+    /*
+     * Returns the set stored in file, or null if there is none
+     */
+    public static KlocworkIssueIdSet load(File file) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            if (in.readInt() != MAGIC || in.readByte() != FORMAT_VERSION) {
+                throw new IOException("Unsupported issue id file " + file.getPath());
+            }
+            int[] ids = new int[readVarInt(in)];
+            int previous = 0;
+            for (int i = 0; i < ids.length; i++) {
+                previous += readVarInt(in);
+                ids[i] = previous;
+            }
+            return new KlocworkIssueIdSet(ids);
+        }
+    }
+
+    private static void writeVarInt(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(InputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed issue id file");
+    }
+}
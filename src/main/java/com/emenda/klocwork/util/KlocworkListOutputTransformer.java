@@ -0,0 +1,116 @@
+package com.emenda.klocwork.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * Transforms the XML produced by "kwciagent list" and "kwcheck list" into the
+ * tab separated issue listing passed to a KlocworkConsoleListing. When a
+ * report writer is given, the problem elements are also copied to it (kwcheck
+ * does not produce a complete XML document so the caller wraps them in an
+ * errorList element).
+ *
+ * Each line is trimmed once, its tag is looked up in a table and the element
+ * value is taken with a plain substring, so the cost per line stays constant.
+ */
+public class KlocworkListOutputTransformer {
+
+    private enum TagAction { START, FIELD, END }
+
+    private static final Map<String, TagAction> TAG_ACTIONS = new HashMap<>();
+
+    static {
+        TAG_ACTIONS.put("problem", TagAction.START);
+        TAG_ACTIONS.put("problemID", TagAction.FIELD);
+        TAG_ACTIONS.put("file", TagAction.FIELD);
+        TAG_ACTIONS.put("method", TagAction.FIELD);
+        TAG_ACTIONS.put("code", TagAction.FIELD);
+        TAG_ACTIONS.put("message", TagAction.FIELD);
+        TAG_ACTIONS.put("citingStatus", TagAction.FIELD);
+        TAG_ACTIONS.put("severity", TagAction.FIELD);
+        TAG_ACTIONS.put("severitylevel", TagAction.FIELD);
+        TAG_ACTIONS.put("/problem", TagAction.END);
+    }
+
+    private final KlocworkConsoleListing listing;
+    private final Writer reportWriter;
+    private final StringBuilder issueLine = new StringBuilder();
+    private String severity;
+    private String status;
+
+    public KlocworkListOutputTransformer(PrintStream console, Writer reportWriter) {
+        this(new KlocworkConsoleListing(console), reportWriter);
+    }
+
+    public KlocworkListOutputTransformer(KlocworkConsoleListing listing, Writer reportWriter) {
+        this.listing = listing;
+        this.reportWriter = reportWriter;
+    }
+
+    public void transform(BufferedReader reader) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            processLine(line);
+        }
+    }
+
+    public void processLine(String line) throws IOException {
+        String trimmed = line.trim();
+        TagAction action = TAG_ACTIONS.get(getTagName(trimmed));
+        if (action == null) {
+            return;
+        }
+        if (reportWriter != null) {
+            reportWriter.write(line);
+            reportWriter.write(System.lineSeparator());
+        }
+        switch (action) {
+            case FIELD:
+                String value = getElementValue(trimmed);
+                if (value != null) {
+                    issueLine.append(value).append('\t');
+                    if (trimmed.startsWith("<severity>")) {
+                        severity = value;
+                    } else if (trimmed.startsWith("<citingStatus>")) {
+                        status = value;
+                    }
+                }
+                break;
+            case END:
+                listing.addIssue(severity, status, issueLine.toString());
+                issueLine.setLength(0);
+                severity = null;
+                status = null;
+                break;
+            default:
+                break;
+        }
+    }
+
+    /*
+     * Returns the name of the tag a trimmed line starts with, e.g. "file" for
+     * "<file>main.c</file>" or "/problem" for "</problem>", or null if the line
+     * does not start with a tag
+     */
+    private static String getTagName(String trimmed) {
+        if (!trimmed.startsWith("<")) {
+            return null;
+        }
+        int end = trimmed.indexOf('>');
+        return (end > 1) ? trimmed.substring(1, end) : null;
+    }
+
+    /*
+     * Returns the text between the opening and closing tag of a single line
+     * element, or null if the element is empty or spans several lines
+     */
+    private static String getElementValue(String trimmed) {
+        int start = trimmed.indexOf('>') + 1;
+        int end = trimmed.lastIndexOf('<');
+        return (end > start) ? trimmed.substring(start, end) : null;
+    }
+}
@@ -0,0 +1,158 @@
+package com.emenda.klocwork.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/*
+ * Trie of build specification source files keyed by path segment, used to
+ * resolve directory entries ("src/net/") and glob entries (such as "*.c" files
+ * below "src/**") of a diff file list by only visiting the matching part of
+ * the tree.
+ *
+ * A case folded trie stores lower-cased keys and expects lower-cased queries,
+ * but still returns the files as they appear in the build specification.
+ */
+public class KlocworkPathTrie {
+
+    private final boolean caseFolded;
+    private final Node root = new Node();
+
+    public KlocworkPathTrie(boolean caseFolded) {
+        this.caseFolded = caseFolded;
+    }
+
+    public void add(String file) {
+        Node node = root;
+        for (String segment : split(fold(file))) {
+            Node child = node.children.get(segment);
+            if (child == null) {
+                child = new Node();
+                node.children.put(segment, child);
+            }
+            node = child;
+        }
+        node.file = file;
+    }
+
+    /*
+     * Adds all files below the given directory to files
+     */
+    public void collectFiles(String dir, Collection<String> files) {
+        Node node = find(dir);
+        if (node != null) {
+            collectAll(node, files);
+        }
+    }
+
+    /*
+     * Adds all files below baseDir matching the glob pattern to files. '*' and
+     * '?' match within a single path segment, "**" matches any number of
+     * segments
+     */
+    public void collectGlobMatches(String baseDir, String glob, Collection<String> files) {
+        Node node = find(baseDir);
+        if (node == null) {
+            return;
+        }
+        List<Pattern> patterns = new ArrayList<>();
+        for (String segment : split(fold(glob))) {
+            patterns.add(segment.equals("**") ? null : toPattern(segment));
+        }
+        collectMatches(node, patterns, 0, files);
+    }
+
+    public static boolean isGlob(String path) {
+        return path.indexOf('*') >= 0 || path.indexOf('?') >= 0;
+    }
+
+    private void collectMatches(Node node, List<Pattern> patterns, int index,
+                                Collection<String> files) {
+        if (index == patterns.size()) {
+            if (node.file != null) {
+                files.add(node.file);
+            }
+            return;
+        }
+        Pattern pattern = patterns.get(index);
+        if (pattern == null) {
+            // "**" matches zero segments here, or one more segment below
+            collectMatches(node, patterns, index + 1, files);
+            for (Node child : node.children.values()) {
+                collectMatches(child, patterns, index, files);
+            }
+        } else {
+            for (Map.Entry<String, Node> child : node.children.entrySet()) {
+                if (pattern.matcher(child.getKey()).matches()) {
+                    collectMatches(child.getValue(), patterns, index + 1, files);
+                }
+            }
+        }
+    }
+
+    private void collectAll(Node node, Collection<String> files) {
+        if (node.file != null) {
+            files.add(node.file);
+        }
+        for (Node child : node.children.values()) {
+            collectAll(child, files);
+        }
+    }
+
+    private Node find(String dir) {
+        Node node = root;
+        for (String segment : split(fold(dir))) {
+            node = node.children.get(segment);
+            if (node == null) {
+                return null;
+            }
+        }
+        return node;
+    }
+
+    private String fold(String path) {
+        return (caseFolded) ? path.toLowerCase() : path;
+    }
+
+    private static List<String> split(String path) {
+        List<String> segments = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i <= path.length(); i++) {
+            if (i == path.length() || path.charAt(i) == '/' || path.charAt(i) == '\\') {
+                if (i > start) {
+                    segments.add(path.substring(start, i));
+                }
+                start = i + 1;
+            }
+        }
+        return segments;
+    }
+
+    private static Pattern toPattern(String glob) {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (char c : glob.toCharArray()) {
+            if (c == '*' || c == '?') {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append((c == '*') ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    private static class Node {
+        private final Map<String, Node> children = new HashMap<>(4);
+        private String file;
+    }
+}
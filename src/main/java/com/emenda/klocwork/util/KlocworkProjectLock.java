@@ -0,0 +1,152 @@
+package com.emenda.klocwork.util;
+
+import hudson.FilePath;
+import hudson.model.Run;
+import jenkins.security.MasterToSlaveCallable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+
+/*
+ * Lock file on an agent, used to keep concurrent builds sharing a workspace
+ * out of each other's local projects.
+ *
+ * The lock file is created atomically and records the build holding it. A
+ * lock whose build is no longer running (e.g. the agent was disconnected
+ * before the lock was released) is considered stale and taken over.
+ */
+public class KlocworkProjectLock {
+
+    private final FilePath lockFile;
+    private final String owner;
+
+    private KlocworkProjectLock(FilePath lockFile, String owner) {
+        this.lockFile = lockFile;
+        this.owner = owner;
+    }
+
+    /*
+     * Returns the lock, or null if it is held by another running build
+     */
+    public static KlocworkProjectLock tryAcquire(FilePath lockFile, Run<?, ?> build)
+                                        throws IOException, InterruptedException {
+        // parallel branches of the same build share the build id, so each
+        // lock holder gets its own token
+        String owner = build.getExternalizableId() + "\n" + UUID.randomUUID().toString();
+        String holder = lockFile.act(new CreateLockFile(lockFile.getRemote(), owner));
+        if (holder != null && holder.isEmpty()) {
+            // released between the failed create and the read, try again
+            holder = lockFile.act(new CreateLockFile(lockFile.getRemote(), owner));
+        }
+        if (holder == null) {
+            return new KlocworkProjectLock(lockFile, owner);
+        }
+        if (isRunning(holder)) {
+            return null;
+        }
+        // an empty lock file is stale too, it is only deleted while still empty
+        lockFile.act(new DeleteLockFile(lockFile.getRemote(), holder));
+        holder = lockFile.act(new CreateLockFile(lockFile.getRemote(), owner));
+        return (holder == null) ? new KlocworkProjectLock(lockFile, owner) : null;
+    }
+
+    public void release() throws IOException, InterruptedException {
+        lockFile.act(new DeleteLockFile(lockFile.getRemote(), owner));
+    }
+
+    private static boolean isRunning(String holder) {
+        String buildId = holder.split("\n", 2)[0];
+        try {
+            Run<?, ?> build = Run.fromExternalizableId(buildId);
+            return build != null && build.isBuilding();
+        } catch (IllegalArgumentException ex) {
+            // not a build id, the lock file was not written by a build
+            return false;
+        }
+    }
+
+    /*
+     * Creates the lock file containing owner, returns null on success or the
+     * current owner if the lock file already exists
+     */
+    private static class CreateLockFile extends MasterToSlaveCallable<String, IOException> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String path;
+        private final String owner;
+
+        CreateLockFile(String path, String owner) {
+            this.path = path;
+            this.owner = owner;
+        }
+
+        public String call() throws IOException {
+            File file = new File(path).getAbsoluteFile();
+            Files.createDirectories(file.getParentFile().toPath());
+            // write the owner first and link it into place, so that the lock
+            // file never exists without its owner
+            Path tmpFile = Files.createTempFile(file.getParentFile().toPath(), file.getName(), ".tmp");
+            try {
+                Files.write(tmpFile, owner.getBytes(StandardCharsets.UTF_8));
+                try {
+                    Files.createLink(file.toPath(), tmpFile);
+                } catch (FileAlreadyExistsException ex) {
+                    throw ex;
+                } catch (UnsupportedOperationException | FileSystemException ex) {
+                    // no hard links on this file system, create the lock file
+                    // directly instead, at the cost of it being empty for the
+                    // moment it takes to write the owner
+                    Files.write(file.toPath(), owner.getBytes(StandardCharsets.UTF_8),
+                        StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                }
+                return null;
+            } catch (FileAlreadyExistsException ex) {
+                try {
+                    return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+                } catch (IOException readEx) {
+                    // released in the meantime
+                    return "";
+                }
+            } finally {
+                Files.deleteIfExists(tmpFile);
+            }
+        }
+    }
+
+    /*
+     * Deletes the lock file if it is still held by owner
+     */
+    private static class DeleteLockFile extends MasterToSlaveCallable<Void, IOException> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String path;
+        private final String owner;
+
+        DeleteLockFile(String path, String owner) {
+            this.path = path;
+            this.owner = owner;
+        }
+
+        public Void call() throws IOException {
+            File file = new File(path);
+            try {
+                String holder = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+                if (holder.equals(owner)) {
+                    Files.deleteIfExists(file.toPath());
+                }
+            } catch (IOException ex) {
+                // already released
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.emenda.klocwork.util;
+
+import com.emenda.klocwork.KlocworkConstants;
+import hudson.EnvVars;
+import hudson.FilePath;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Snapshot of a freshly created local project (.kwlp and .kwps), kept in a
+ * cache directory under the agent's root so that new workspaces on the agent
+ * can be seeded from it instead of running "kwciagent create".
+ *
+ * Snapshots are keyed on the CI tool and its installation, the server URL and
+ * project, the content of the build specification and the location of the
+ * local project (the project stores absolute paths). Snapshots are copied
+ * rather than linked because the CI tool updates the project files in place.
+ */
+public class KlocworkProjectSnapshot {
+
+    private static final String FORMAT_VERSION = "1";
+
+    private final FilePath cacheDir;
+    private final FilePath snapshotDir;
+
+    private KlocworkProjectSnapshot(FilePath cacheDir, String key) {
+        this.cacheDir = cacheDir;
+        this.snapshotDir = cacheDir.child(key);
+    }
+
+    /*
+     * Returns the snapshot for the given local project, or null if the agent
+     * has no root directory to keep snapshots in
+     */
+    public static KlocworkProjectSnapshot forProject(String ciTool, EnvVars envVars,
+                                                     FilePath workspace, FilePath buildSpec,
+                                                     FilePath kwlp)
+                                        throws IOException, InterruptedException {
+        FilePath cacheDir = KlocworkUtil.getAgentCacheDir(workspace,
+            KlocworkConstants.PROJECT_SNAPSHOT_CACHE_DIR);
+        if (cacheDir == null || !buildSpec.exists()) {
+            return null;
+        }
+        String key = hash(FORMAT_VERSION,
+            ciTool,
+            StringUtils.defaultString(KlocworkToolDetector.getToolFingerprint(workspace, envVars)),
+            StringUtils.defaultString(envVars.get(KlocworkConstants.KLOCWORK_URL)),
+            StringUtils.defaultString(envVars.get(KlocworkConstants.KLOCWORK_PROJECT)),
+            buildSpec.digest(),
+            kwlp.getRemote());
+        return new KlocworkProjectSnapshot(cacheDir, key);
+    }
+
+    /*
+     * Copies the snapshot into kwlp and kwps, returns false if there is no
+     * snapshot or it could not be restored completely
+     */
+    public boolean restore(FilePath kwlp, FilePath kwps) throws InterruptedException {
+        try {
+            FilePath snapshotKwlp = snapshotDir.child(".kwlp");
+            FilePath snapshotKwps = snapshotDir.child(".kwps");
+            if (!snapshotKwlp.exists() || !snapshotKwps.exists()) {
+                return false;
+            }
+            kwlp.mkdirs();
+            kwps.mkdirs();
+            snapshotKwlp.copyRecursiveTo(kwlp);
+            snapshotKwps.copyRecursiveTo(kwps);
+            // recently used snapshots are kept when the cache is pruned
+            snapshotDir.touch(System.currentTimeMillis());
+            return true;
+        } catch (IOException ex) {
+            // the snapshot may have been pruned while we were copying it
+            deleteQuietly(kwlp);
+            deleteQuietly(kwps);
+            return false;
+        }
+    }
+
+    /*
+     * Stores a copy of a freshly created local project. Failures are ignored
+     * as the snapshot is only a cache
+     */
+    public void save(FilePath kwlp, FilePath kwps) throws InterruptedException {
+        FilePath tmpDir = null;
+        try {
+            if (snapshotDir.exists()) {
+                return;
+            }
+            cacheDir.mkdirs();
+            // concurrent builds each copy into their own directory first
+            tmpDir = cacheDir.createTempDir(snapshotDir.getName(), ".tmp");
+            kwlp.copyRecursiveTo(tmpDir.child(".kwlp"));
+            kwps.copyRecursiveTo(tmpDir.child(".kwps"));
+            if (snapshotDir.exists()) {
+                deleteQuietly(tmpDir);
+            } else {
+                tmpDir.renameTo(snapshotDir);
+            }
+            prune();
+        } catch (IOException ex) {
+            if (tmpDir != null) {
+                deleteQuietly(tmpDir);
+            }
+        }
+    }
+
+    /*
+     * Removes the least recently used snapshots beyond MAX_PROJECT_SNAPSHOTS
+     */
+    private void prune() throws IOException, InterruptedException {
+        List<Map.Entry<FilePath, Long>> snapshots = new ArrayList<Map.Entry<FilePath, Long>>();
+        for (FilePath child : cacheDir.list()) {
+            if (child.isDirectory() && !child.getName().endsWith(".tmp")) {
+                snapshots.add(new AbstractMap.SimpleEntry<FilePath, Long>(child, child.lastModified()));
+            }
+        }
+        if (snapshots.size() <= KlocworkConstants.MAX_PROJECT_SNAPSHOTS) {
+            return;
+        }
+        // most recently used first
+        Collections.sort(snapshots, new Comparator<Map.Entry<FilePath, Long>>() {
+            public int compare(Map.Entry<FilePath, Long> a, Map.Entry<FilePath, Long> b) {
+                return b.getValue().compareTo(a.getValue());
+            }
+        });
+        for (int i = KlocworkConstants.MAX_PROJECT_SNAPSHOTS; i < snapshots.size(); i++) {
+            deleteQuietly(snapshots.get(i).getKey());
+        }
+    }
+
+    private static void deleteQuietly(FilePath dir) throws InterruptedException {
+        try {
+            dir.deleteRecursive();
+        } catch (IOException ignored) {
+            // nothing more we can do
+        }
+    }
+
+    private static String hash(String... values) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String value : values) {
+                digest.update(value.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            // long enough to be unique, short enough for Windows paths
+            return hex.substring(0, 32);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
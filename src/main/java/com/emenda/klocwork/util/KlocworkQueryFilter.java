@@ -0,0 +1,286 @@
+package com.emenda.klocwork.util;
+
+import net.sf.json.JSONObject;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/*
+ * A Klocwork search query split into the part the server has to evaluate (the
+ * base query) and its severity and status filters, compiled into predicates
+ * over the issues returned by the search API. Conditions with the same base
+ * query can then share a single search.
+ *
+ * Only filters with unambiguous semantics are compiled: severity numbers and
+ * ranges (matched against severityCode), built-in severity names, exact
+ * status values ("+Fix") and status names that do not match any other status
+ * by substring. Queries with any other severity or status filter are not
+ * compiled and keep their own search.
+ *
+ * A base query without any other restriction than its grouping would return
+ * every issue of the project, so such queries are never shared and keep their
+ * own search with the filters applied by the server.
+ */
+public class KlocworkQueryFilter {
+
+    private static final List<String> SEVERITY_NAMES = Arrays.asList(
+        "critical", "error", "warning", "review");
+
+    private static final List<String> STATUS_NAMES = Arrays.asList(
+        "analyze", "ignore", "not a problem", "fix", "fix in next release",
+        "fix in later release", "defer", "filter");
+
+    private final String baseQuery;
+    private final boolean restricted;
+    private final List<Predicate> predicates;
+
+    private KlocworkQueryFilter(String baseQuery, boolean restricted, List<Predicate> predicates) {
+        this.baseQuery = baseQuery;
+        this.restricted = restricted;
+        this.predicates = predicates;
+    }
+
+    /*
+     * Returns the compiled query, or null if it has a severity or status
+     * filter that cannot be evaluated locally
+     */
+    public static KlocworkQueryFilter compile(String query) {
+        List<String> baseTerms = new ArrayList<String>();
+        List<Predicate> predicates = new ArrayList<Predicate>();
+        boolean restricted = false;
+        List<String> terms = tokenize(StringUtils.defaultString(query));
+        // non-empty queries are sent with grouping off unless they say
+        // otherwise (see KlocworkUtil.createKlocworkAPIRequest), which the
+        // base query has to keep even if only filters remain
+        if (!terms.isEmpty() && !StringUtils.containsIgnoreCase(query, "grouping:")) {
+            baseTerms.add("grouping:off");
+        }
+        for (String term : terms) {
+            boolean negated = term.startsWith("-");
+            String body = negated ? term.substring(1) : term;
+            int colon = body.indexOf(':');
+            String field = (colon > 0) ? body.substring(0, colon).toLowerCase(Locale.ENGLISH) : "";
+            if (!field.equals("severity") && !field.equals("status")) {
+                baseTerms.add(term);
+                if (!field.equals("grouping")) {
+                    restricted = true;
+                }
+                continue;
+            }
+            Predicate predicate = field.equals("severity") ?
+                compileSeverity(body.substring(colon + 1), negated) :
+                compileStatus(body.substring(colon + 1), negated);
+            if (predicate == null) {
+                return null;
+            }
+            predicates.add(predicate);
+        }
+        // the order of the terms does not change the search
+        Collections.sort(baseTerms);
+        return new KlocworkQueryFilter(String.join(" ", baseTerms), restricted, predicates);
+    }
+
+    /*
+     * The query for the server, shared by filters with equal base queries
+     */
+    public String getBaseQuery() {
+        return baseQuery;
+    }
+
+    /*
+     * Whether the base query restricts the issues returned by the server,
+     * rather than only setting their grouping
+     */
+    public boolean isRestricted() {
+        return restricted;
+    }
+
+    /*
+     * Returns whether the issue matches the filters, or null if the issue
+     * lacks a field the filters need
+     */
+    public Boolean matches(JSONObject issue) {
+        for (Predicate predicate : predicates) {
+            Boolean match = predicate.matches(issue);
+            if (match == null || !match) {
+                return match;
+            }
+        }
+        return Boolean.TRUE;
+    }
+
+    private static Predicate compileSeverity(String values, boolean negated) {
+        final List<int[]> ranges = new ArrayList<int[]>();
+        final List<String> names = new ArrayList<String>();
+        for (String value : splitValues(values)) {
+            String lower = value.toLowerCase(Locale.ENGLISH);
+            if (SEVERITY_NAMES.contains(lower)) {
+                names.add(lower);
+                continue;
+            }
+            int dash = value.indexOf('-');
+            try {
+                if (dash > 0) {
+                    ranges.add(new int[] { Integer.parseInt(value.substring(0, dash)),
+                        Integer.parseInt(value.substring(dash + 1)) });
+                } else {
+                    int code = Integer.parseInt(value);
+                    ranges.add(new int[] { code, code });
+                }
+            } catch (NumberFormatException ex) {
+                return null;
+            }
+        }
+        if (ranges.isEmpty() && names.isEmpty()) {
+            return null;
+        }
+        return new Predicate(negated) {
+            Boolean test(JSONObject issue) {
+                if (!names.isEmpty()) {
+                    if (!issue.containsKey("severity")) {
+                        return null;
+                    }
+                    if (names.contains(issue.getString("severity").toLowerCase(Locale.ENGLISH))) {
+                        return Boolean.TRUE;
+                    }
+                }
+                if (!ranges.isEmpty()) {
+                    int code = issue.optInt("severityCode", -1);
+                    if (code < 0) {
+                        return null;
+                    }
+                    for (int[] range : ranges) {
+                        if (code >= range[0] && code <= range[1]) {
+                            return Boolean.TRUE;
+                        }
+                    }
+                }
+                return Boolean.FALSE;
+            }
+        };
+    }
+
+    private static Predicate compileStatus(String values, boolean negated) {
+        final List<String> statuses = new ArrayList<String>();
+        for (String value : splitValues(values)) {
+            boolean exact = value.startsWith("+");
+            String status = (exact ? value.substring(1) : value).toLowerCase(Locale.ENGLISH);
+            if (!STATUS_NAMES.contains(status)) {
+                return null;
+            }
+            if (!exact) {
+                // e.g. "status:Fix" also matches "Fix in Next Release"
+                for (String other : STATUS_NAMES) {
+                    if (!other.equals(status) && other.contains(status)) {
+                        return null;
+                    }
+                }
+            }
+            statuses.add(status);
+        }
+        if (statuses.isEmpty()) {
+            return null;
+        }
+        return new Predicate(negated) {
+            Boolean test(JSONObject issue) {
+                if (!issue.containsKey("status")) {
+                    return null;
+                }
+                return statuses.contains(issue.getString("status").toLowerCase(Locale.ENGLISH));
+            }
+        };
+    }
+
+    /*
+     * Splits a query into terms at whitespace outside double quotes
+     */
+    private static List<String> tokenize(String query) {
+        List<String> terms = new ArrayList<String>();
+        StringBuilder term = new StringBuilder();
+        boolean quoted = false;
+        for (char c : query.trim().toCharArray()) {
+            if (c == '"') {
+                quoted = !quoted;
+            }
+            if (Character.isWhitespace(c) && !quoted) {
+                if (term.length() > 0) {
+                    terms.add(term.toString());
+                    term.setLength(0);
+                }
+            } else {
+                term.append(c);
+            }
+        }
+        if (term.length() > 0) {
+            terms.add(term.toString());
+        }
+        return terms;
+    }
+
+    private static List<String> splitValues(String values) {
+        List<String> result = new ArrayList<String>();
+        for (String value : values.split(",")) {
+            String trimmed = value.trim();
+            if (trimmed.length() > 1 && trimmed.startsWith("\"") && trimmed.endsWith("\"")) {
+                trimmed = trimmed.substring(1, trimmed.length() - 1);
+            } else if (trimmed.startsWith("+\"") && trimmed.endsWith("\"") && trimmed.length() > 2) {
+                trimmed = "+" + trimmed.substring(2, trimmed.length() - 1);
+            }
+            if (!trimmed.isEmpty()) {
+                result.add(trimmed);
+            }
+        }
+        return result;
+    }
+
+    /*
+     * Groups the queries that can share a search by base query, in the order
+     * of their first query. Queries that cannot be compiled, have no server
+     * side restriction or have no other query to share with, are not grouped
+     */
+    public static Map<String, List<Integer>> groupByBaseQuery(List<KlocworkQueryFilter> filters) {
+        Map<String, List<Integer>> groups = new LinkedHashMap<String, List<Integer>>();
+        for (int i = 0; i < filters.size(); i++) {
+            KlocworkQueryFilter filter = filters.get(i);
+            if (filter == null || !filter.isRestricted()) {
+                continue;
+            }
+            List<Integer> group = groups.get(filter.getBaseQuery());
+            if (group == null) {
+                group = new ArrayList<Integer>();
+                groups.put(filter.getBaseQuery(), group);
+            }
+            group.add(i);
+        }
+        Iterator<List<Integer>> it = groups.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().size() < 2) {
+                it.remove();
+            }
+        }
+        return groups;
+    }
+
+    private abstract static class Predicate {
+
+        private final boolean negated;
+
+        Predicate(boolean negated) {
+            this.negated = negated;
+        }
+
+        abstract Boolean test(JSONObject issue);
+
+        Boolean matches(JSONObject issue) {
+            Boolean match = test(issue);
+            return (match == null) ? null : match != negated;
+        }
+    }
+}
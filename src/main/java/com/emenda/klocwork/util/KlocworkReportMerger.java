@@ -0,0 +1,162 @@
+package com.emenda.klocwork.util;
+
+import jenkins.security.MasterToSlaveCallable;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * Merges the XML reports written by several (sharded) CI analyses into a
+ * single report in the errorList format read by the gateway.
+ *
+ * Problem elements are copied line by line. An issue found by more than one
+ * shard (typically in a shared header) is only written once, issues are
+ * compared on their location, checker and message as the local problem IDs
+ * of separate local projects are unrelated.
+ *
+ * Each report is read in the encoding its XML declaration names (UTF-8 if
+ * none). The merged report keeps the declaration and root element, with its
+ * namespace, of the first report, and is written in that report's encoding.
+ */
+public class KlocworkReportMerger extends MasterToSlaveCallable<Integer, IOException> {
+
+    private static final String[] KEY_TAGS = {
+        "<file>", "<line>", "<column>", "<code>", "<method>", "<message>"
+    };
+    private static final Pattern ENCODING = Pattern.compile(
+        "^<\\?xml[^>]*\\sencoding\\s*=\\s*[\"']([^\"']+)[\"']");
+    private static final Pattern ROOT_ELEMENT = Pattern.compile(
+        "<([^\\s?!/>]+)[^>]*>");
+    private static final String DEFAULT_DECLARATION =
+        "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>";
+    private static final String DEFAULT_ROOT = "errorList";
+    // how much of a report is searched for its declaration and root element
+    private static final int HEADER_SIZE = 8 * 1024;
+
+    private final List<String> reports;
+    private final String outputFile;
+
+    public KlocworkReportMerger(List<String> reports, String outputFile) {
+        this.reports = reports;
+        this.outputFile = outputFile;
+    }
+
+    /*
+     * Returns the number of issues written to the merged report
+     */
+    public Integer call() throws IOException {
+        Path output = Paths.get(outputFile);
+        Path outputDir = output.toAbsolutePath().getParent();
+        if (outputDir != null) {
+            Files.createDirectories(outputDir);
+        }
+        Set<String> issueKeys = new HashSet<String>();
+        int issueCount = 0;
+        String header = reports.isEmpty() ? "" : readHeader(Paths.get(reports.get(0)));
+        Charset charset = getCharset(header);
+        Matcher root = ROOT_ELEMENT.matcher(header);
+        try (BufferedWriter writer = Files.newBufferedWriter(output, charset)) {
+            String rootName = DEFAULT_ROOT;
+            if (root.find()) {
+                rootName = root.group(1);
+                writer.write(header, 0, root.start());
+                // the root element of a report without problems may be empty
+                writer.write(root.group().endsWith("/>") ?
+                    root.group().substring(0, root.group().length() - 2) + ">" : root.group());
+            } else {
+                writer.write(DEFAULT_DECLARATION);
+                writer.newLine();
+                writer.write("<" + rootName + ">");
+            }
+            writer.newLine();
+            for (String report : reports) {
+                issueCount += copyProblems(Paths.get(report), writer, issueKeys);
+            }
+            writer.write("</" + rootName + ">");
+            writer.newLine();
+        }
+        return issueCount;
+    }
+
+    /*
+     * Returns the start of the report, up to its first problem element
+     */
+    private static String readHeader(Path report) throws IOException {
+        byte[] start = new byte[HEADER_SIZE];
+        int length = 0;
+        try (InputStream in = Files.newInputStream(report)) {
+            int read;
+            while (length < start.length && (read = in.read(start, length, start.length - length)) > 0) {
+                length += read;
+            }
+        }
+        // the declaration is ASCII, whatever the encoding it names
+        String declaration = new String(start, 0, length, StandardCharsets.ISO_8859_1);
+        String header = new String(start, 0, length, getCharset(declaration));
+        int problem = header.indexOf("<problem");
+        return (problem < 0) ? header : header.substring(0, problem);
+    }
+
+    private static Charset getCharset(String header) {
+        Matcher encoding = ENCODING.matcher(header);
+        if (encoding.find()) {
+            try {
+                return Charset.forName(encoding.group(1));
+            } catch (IllegalArgumentException ex) {
+                // not an encoding we know, read it as the default
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    private int copyProblems(Path report, BufferedWriter writer, Set<String> issueKeys)
+                                        throws IOException {
+        int issueCount = 0;
+        List<String> problem = null;
+        StringBuilder key = new StringBuilder();
+        try (BufferedReader reader = Files.newBufferedReader(report, getCharset(readHeader(report)))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String trimmed = line.trim();
+                if (trimmed.startsWith("<problem>") || trimmed.startsWith("<problem ")) {
+                    problem = new ArrayList<String>();
+                    key.setLength(0);
+                }
+                if (problem == null) {
+                    continue;
+                }
+                problem.add(line);
+                for (String tag : KEY_TAGS) {
+                    if (trimmed.startsWith(tag)) {
+                        key.append(trimmed).append('\n');
+                        break;
+                    }
+                }
+                if (trimmed.startsWith("</problem>")) {
+                    if (issueKeys.add(key.toString())) {
+                        for (String problemLine : problem) {
+                            writer.write(problemLine);
+                            writer.newLine();
+                        }
+                        issueCount++;
+                    }
+                    problem = null;
+                }
+            }
+        }
+        return issueCount;
+    }
+}
@@ -0,0 +1,453 @@
+package com.emenda.klocwork.util;
+
+import jenkins.security.MasterToSlaveCallable;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/*
+ * Content addressed cache of the issues found in each source file, kept in a
+ * directory on the agent.
+ *
+ * A file's entry is keyed on the hash of its content, of the build
+ * specification lines compiling it and of the checker configuration (the
+ * .kwps settings directory and the CI tool installation), so any change to
+ * one of them is a miss. Entries hold the problem elements of the file as
+ * listed by the CI tool. As with the file list passed to the list command,
+ * only issues reported in the file itself are kept.
+ *
+ * The cache is bounded in size, the least recently used entries are removed
+ * first.
+ */
+public class KlocworkResultCache {
+
+    private static final String ENTRY_SUFFIX = ".xml.gz";
+
+    private final String cacheDir;
+    private final long maxSize;
+
+    public KlocworkResultCache(String cacheDir, long maxSize) {
+        this.cacheDir = cacheDir;
+        this.maxSize = maxSize;
+    }
+
+    /*
+     * indexFile is where the build specification index is kept between
+     * builds, or null to read the build specification
+     */
+    public LookupCallable lookup(List<String> files, String buildSpec, String indexFile,
+                                 String settingsDir, String toolFingerprint) {
+        return new LookupCallable(cacheDir, files, buildSpec, indexFile, settingsDir, toolFingerprint);
+    }
+
+    public StoreCallable store(Lookup lookup, byte[] listOutput, Charset charset) {
+        return new StoreCallable(cacheDir, maxSize, lookup.getMissKeys(), listOutput, charset.name());
+    }
+
+    /*
+     * Result of a lookup: the keys of the files which need to be analysed and
+     * the cached problem elements of all other files
+     */
+    // the id element of a problem in the list output
+    private static final Pattern PROBLEM_ID = Pattern.compile(
+        "(<problemID>\\s*)(\\d+)(\\s*</problemID>)", Pattern.CASE_INSENSITIVE);
+
+    public static class Lookup implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Map<String, String> missKeys = new LinkedHashMap<String, String>();
+        private final StringBuilder cachedProblems = new StringBuilder();
+        private int hitCount = 0;
+
+        public List<String> getMisses() {
+            return new ArrayList<String>(missKeys.keySet());
+        }
+
+        public Map<String, String> getMissKeys() {
+            return missKeys;
+        }
+
+        public int getHitCount() {
+            return hitCount;
+        }
+
+        /*
+         * Adds the cached problem elements to the output of the list command.
+         * Without any fresh output an output in the format of ciTool is made
+         * up, kwciagent writes a complete document while kwcheck only writes
+         * the problem elements. The cached problems keep the ids of the run
+         * that listed them, so they are renumbered after the fresh ones
+         */
+        public ByteArrayOutputStream merge(ByteArrayOutputStream listOutput, boolean completeDocument,
+                                           Charset charset) throws IOException {
+            if (cachedProblems.length() == 0) {
+                return listOutput;
+            }
+            String fresh = (listOutput != null) ? new String(listOutput.toByteArray(), charset) : "";
+            String cachedProblems = renumber(this.cachedProblems, getMaxProblemId(fresh) + 1);
+            StringBuilder merged = new StringBuilder(fresh.length() + cachedProblems.length() + 128);
+            if (!fresh.trim().isEmpty()) {
+                // insert before the closing tag of the root element, if any
+                int rootEnd = completeDocument ? fresh.lastIndexOf("</") : -1;
+                if (rootEnd < 0) {
+                    merged.append(fresh);
+                    if (!fresh.endsWith("\n")) {
+                        merged.append(System.lineSeparator());
+                    }
+                    merged.append(cachedProblems);
+                } else {
+                    merged.append(fresh, 0, rootEnd).append(cachedProblems).append(fresh, rootEnd, fresh.length());
+                }
+            } else if (completeDocument) {
+                merged.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>")
+                    .append(System.lineSeparator())
+                    .append("<errorList>").append(System.lineSeparator())
+                    .append(cachedProblems)
+                    .append("</errorList>").append(System.lineSeparator());
+            } else {
+                merged.append(cachedProblems);
+            }
+            ByteArrayOutputStream mergedOutput = new ByteArrayOutputStream();
+            mergedOutput.write(merged.toString().getBytes(charset));
+            return mergedOutput;
+        }
+
+        private static int getMaxProblemId(String listOutput) {
+            int maxId = 0;
+            Matcher matcher = PROBLEM_ID.matcher(listOutput);
+            while (matcher.find()) {
+                try {
+                    maxId = Math.max(maxId, Integer.parseInt(matcher.group(2)));
+                } catch (NumberFormatException ex) {
+                    // not an id we could collide with
+                }
+            }
+            return maxId;
+        }
+
+        /*
+         * Returns the problems with their ids replaced by consecutive ids
+         * starting at firstId
+         */
+        private static String renumber(CharSequence problems, int firstId) {
+            Matcher matcher = PROBLEM_ID.matcher(problems);
+            StringBuffer renumbered = new StringBuffer(problems.length());
+            int id = firstId;
+            while (matcher.find()) {
+                matcher.appendReplacement(renumbered,
+                    Matcher.quoteReplacement(matcher.group(1) + Integer.toString(id++) + matcher.group(3)));
+            }
+            matcher.appendTail(renumbered);
+            return renumbered.toString();
+        }
+    }
+
+    public static class LookupCallable extends MasterToSlaveCallable<Lookup, IOException> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String cacheDir;
+        private final List<String> files;
+        private final String buildSpec;
+        private final String indexFile;
+        private final String settingsDir;
+        private final String toolFingerprint;
+
+        LookupCallable(String cacheDir, List<String> files, String buildSpec, String indexFile,
+                       String settingsDir, String toolFingerprint) {
+            this.cacheDir = cacheDir;
+            this.files = files;
+            this.buildSpec = buildSpec;
+            this.indexFile = indexFile;
+            this.settingsDir = settingsDir;
+            this.toolFingerprint = toolFingerprint;
+        }
+
+        public Lookup call() throws IOException {
+            // the compile lines of each file are hashed when the index is made,
+            // only for the result cache
+            KlocworkBuildSpecIndex index = KlocworkBuildSpecIndexStore.getIndex(
+                Paths.get(buildSpec), (indexFile != null) ? Paths.get(indexFile) : null, true);
+            String checkerConfig = toHex(hashDirectory(Paths.get(settingsDir))) + toolFingerprint;
+            Lookup lookup = new Lookup();
+            long now = System.currentTimeMillis();
+            for (String file : files) {
+                Path source = Paths.get(file);
+                byte[] compileDigest = index.getCompileDigest(source.normalize().toString());
+                if (compileDigest == null || !Files.isRegularFile(source)) {
+                    // not something we can key, always analyse it
+                    lookup.missKeys.put(file, null);
+                    continue;
+                }
+                MessageDigest digest = newDigest();
+                digest.update(hashFile(source));
+                digest.update(compileDigest);
+                digest.update(checkerConfig.getBytes(StandardCharsets.UTF_8));
+                String key = toHex(digest.digest());
+                Path entry = getEntry(cacheDir, key);
+                if (readEntry(entry, lookup.cachedProblems)) {
+                    lookup.hitCount++;
+                    // keep recently used entries when the cache is pruned
+                    entry.toFile().setLastModified(now);
+                } else {
+                    lookup.missKeys.put(file, key);
+                }
+            }
+            return lookup;
+        }
+    }
+
+    public static class StoreCallable extends MasterToSlaveCallable<Integer, IOException> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String cacheDir;
+        private final long maxSize;
+        private final Map<String, String> missKeys;
+        private final byte[] listOutput;
+        private final String charset;
+
+        StoreCallable(String cacheDir, long maxSize, Map<String, String> missKeys, byte[] listOutput,
+                      String charset) {
+            this.cacheDir = cacheDir;
+            this.maxSize = maxSize;
+            this.missKeys = missKeys;
+            this.listOutput = listOutput;
+            this.charset = charset;
+        }
+
+        /*
+         * Stores the problems of the analysed files, returns the number of
+         * entries written
+         */
+        public Integer call() throws IOException {
+            Map<String, String> keys = new HashMap<String, String>();
+            Map<String, StringBuilder> problems = new HashMap<String, StringBuilder>();
+            for (Map.Entry<String, String> miss : missKeys.entrySet()) {
+                if (miss.getValue() != null) {
+                    String file = normalize(miss.getKey());
+                    keys.put(file, miss.getValue());
+                    problems.put(file, new StringBuilder());
+                }
+            }
+            splitProblems(problems);
+
+            int stored = 0;
+            for (Map.Entry<String, StringBuilder> fileProblems : problems.entrySet()) {
+                if (writeEntry(getEntry(cacheDir, keys.get(fileProblems.getKey())),
+                        fileProblems.getValue().toString())) {
+                    stored++;
+                }
+            }
+            prune();
+            return stored;
+        }
+
+        /*
+         * Collects the problem elements of the list output per file
+         */
+        private void splitProblems(Map<String, StringBuilder> problems) throws IOException {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new ByteArrayInputStream(listOutput), charset));
+            StringBuilder problem = null;
+            String file = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String trimmed = line.trim();
+                if (trimmed.startsWith("<problem>") || trimmed.startsWith("<problem ")) {
+                    problem = new StringBuilder();
+                    file = null;
+                }
+                if (problem == null) {
+                    continue;
+                }
+                problem.append(line).append(System.lineSeparator());
+                if (trimmed.startsWith("<file>") && trimmed.endsWith("</file>")) {
+                    file = normalize(trimmed.substring("<file>".length(), trimmed.length() - "</file>".length()));
+                } else if (trimmed.startsWith("</problem>")) {
+                    StringBuilder fileProblems = (file != null) ? problems.get(file) : null;
+                    if (fileProblems != null) {
+                        fileProblems.append(problem);
+                    }
+                    problem = null;
+                }
+            }
+        }
+
+        private void prune() throws IOException {
+            List<Path> entries = new ArrayList<Path>();
+            long totalSize = 0;
+            File[] dirs = new File(cacheDir).listFiles();
+            if (dirs == null) {
+                return;
+            }
+            for (File dir : dirs) {
+                File[] dirEntries = dir.listFiles();
+                if (dirEntries == null) {
+                    continue;
+                }
+                for (File entry : dirEntries) {
+                    entries.add(entry.toPath());
+                    totalSize += entry.length();
+                }
+            }
+            if (totalSize <= maxSize) {
+                return;
+            }
+            final Map<Path, Long> modified = new HashMap<Path, Long>();
+            for (Path entry : entries) {
+                modified.put(entry, entry.toFile().lastModified());
+            }
+            Collections.sort(entries, new Comparator<Path>() {
+                public int compare(Path a, Path b) {
+                    return Long.compare(modified.get(a), modified.get(b));
+                }
+            });
+            // prune well below the limit so that not every build has to
+            for (Path entry : entries) {
+                if (totalSize <= maxSize * 3 / 4) {
+                    break;
+                }
+                long size = entry.toFile().length();
+                if (Files.deleteIfExists(entry)) {
+                    totalSize -= size;
+                }
+            }
+        }
+    }
+
+    private static Path getEntry(String cacheDir, String key) {
+        return Paths.get(cacheDir, key.substring(0, 2), key + ENTRY_SUFFIX);
+    }
+
+    private static boolean readEntry(Path entry, StringBuilder problems) {
+        if (!Files.isRegularFile(entry)) {
+            return false;
+        }
+        StringBuilder entryProblems = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(entry)), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                entryProblems.append(line).append(System.lineSeparator());
+            }
+        } catch (IOException ex) {
+            // a corrupt entry is a miss and gets written again
+            return false;
+        }
+        problems.append(entryProblems);
+        return true;
+    }
+
+    private static boolean writeEntry(Path entry, String problems) {
+        Path tmpFile = null;
+        try {
+            Files.createDirectories(entry.getParent());
+            tmpFile = Files.createTempFile(entry.getParent(), entry.getFileName().toString(), ".tmp");
+            try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+                    new GZIPOutputStream(Files.newOutputStream(tmpFile)), StandardCharsets.UTF_8))) {
+                writer.write(problems);
+            }
+            Files.move(tmpFile, entry, StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        } catch (IOException ex) {
+            try {
+                if (tmpFile != null) {
+                    Files.deleteIfExists(tmpFile);
+                }
+            } catch (IOException ignored) {
+                // nothing more we can do
+            }
+            return false;
+        }
+    }
+
+    private static String normalize(String file) {
+        String normalized = Paths.get(file).normalize().toString();
+        // Windows paths are compared case insensitively, as in the build spec index
+        return (normalized.contains("\\")) ? normalized.toLowerCase() : normalized;
+    }
+
+    /*
+     * Hashes the relative paths and contents of all files below dir
+     */
+    static byte[] hashDirectory(Path dir) throws IOException {
+        List<Path> files = new ArrayList<Path>();
+        if (Files.isDirectory(dir)) {
+            try (Stream<Path> walk = Files.walk(dir)) {
+                Iterator<Path> paths = walk.iterator();
+                while (paths.hasNext()) {
+                    Path path = paths.next();
+                    if (Files.isRegularFile(path)) {
+                        files.add(path);
+                    }
+                }
+            }
+        }
+        Collections.sort(files);
+        MessageDigest digest = newDigest();
+        for (Path file : files) {
+            digest.update(dir.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+            digest.update(hashFile(file));
+        }
+        return digest.digest();
+    }
+
+    static byte[] hashFile(Path file) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return digest.digest();
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,160 @@
+package com.emenda.klocwork.util;
+
+import hudson.AbortException;
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.Computer;
+import hudson.model.TaskListener;
+import hudson.util.ArgumentListBuilder;
+import jenkins.security.MasterToSlaveCallable;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Decides whether kwciagent or kwcheck is used for CI analysis on an agent.
+ *
+ * Running "kwciagent --version" (and "kwcheck --version" as a fallback) on
+ * every build is expensive, so the result is cached per agent and PATH. The
+ * cache entry holds a fingerprint of the tool executables found on the PATH
+ * (location, size and modification time) which is cheap to compute on the
+ * agent, so installing, removing or upgrading Klocwork invalidates it.
+ */
+public class KlocworkToolDetector {
+
+    public static final String KWCIAGENT = "kwciagent";
+    public static final String KWCHECK = "kwcheck";
+
+    private static final Map<String, Detection> CACHE = new ConcurrentHashMap<>();
+
+    /*
+     * Returns the CI tool to use. The version commands are only executed
+     * when there is no valid cached detection for this agent and PATH
+     */
+    public static String getCiTool(Launcher launcher, TaskListener listener,
+                                   FilePath workspace, EnvVars envVars)
+                                        throws AbortException {
+        String path = StringUtils.defaultString(envVars.get("PATH"));
+        String fingerprint = getFingerprint(workspace, path);
+        String key = getAgentName(workspace) + File.pathSeparator + path;
+        Detection cached = CACHE.get(key);
+        if (fingerprint != null && cached != null && cached.fingerprint.equals(fingerprint)) {
+            listener.getLogger().println("Using " + cached.ciTool +
+                " (detected by a previous build on this agent)");
+            return cached.ciTool;
+        }
+
+        String ciTool;
+        if (KlocworkUtil.executeCommand(launcher, listener, workspace, envVars,
+                getVersionCmd(KWCIAGENT), true) > 0) {
+            KlocworkUtil.executeCommand(launcher, listener, workspace, envVars,
+                getVersionCmd(KWCHECK));
+            ciTool = KWCHECK;
+        } else {
+            ciTool = KWCIAGENT;
+        }
+        // only cache when the tools could be located, otherwise there is
+        // nothing to detect an upgrade with
+        if (fingerprint != null) {
+            CACHE.put(key, new Detection(fingerprint, ciTool));
+        }
+        return ciTool;
+    }
+
+    public static ArgumentListBuilder getVersionCmd(String tool) {
+        ArgumentListBuilder versionCmd = new ArgumentListBuilder(tool);
+        versionCmd.add("--version");
+        return versionCmd;
+    }
+
+    private static String getAgentName(FilePath workspace) {
+        Computer computer = workspace.toComputer();
+        // the master's computer has an empty name
+        return (computer != null) ? computer.getName() : "";
+    }
+
+    /*
+     * Returns the location, size and modification time of the tool
+     * executables on the agent's PATH, or null if none were found
+     */
+    public static String getToolFingerprint(FilePath workspace, EnvVars envVars) {
+        return getFingerprint(workspace, StringUtils.defaultString(envVars.get("PATH")));
+    }
+
+    private static String getFingerprint(FilePath workspace, String path) {
+        try {
+            return workspace.act(new ToolFingerprint(path));
+        } catch (IOException | InterruptedException ex) {
+            return null;
+        }
+    }
+
+    private static class Detection {
+        private final String fingerprint;
+        private final String ciTool;
+
+        Detection(String fingerprint, String ciTool) {
+            this.fingerprint = fingerprint;
+            this.ciTool = ciTool;
+        }
+    }
+
+    /*
+     * Looks up the tool executables on the agent's PATH and returns their
+     * location, size and modification time, or null if none were found
+     */
+    private static class ToolFingerprint extends MasterToSlaveCallable<String, IOException> {
+
+        private static final long serialVersionUID = 1L;
+        private static final String[] WINDOWS_EXTENSIONS = { ".exe", ".cmd", ".bat" };
+
+        private final String path;
+
+        ToolFingerprint(String path) {
+            this.path = path;
+        }
+
+        public String call() throws IOException {
+            StringBuilder fingerprint = new StringBuilder();
+            boolean found = false;
+            for (String tool : new String[] { KWCIAGENT, KWCHECK }) {
+                File executable = findExecutable(tool);
+                if (executable != null) {
+                    found = true;
+                    fingerprint.append(executable.getAbsolutePath()).append(';')
+                        .append(executable.length()).append(';')
+                        .append(executable.lastModified());
+                }
+                fingerprint.append('|');
+            }
+            return (found) ? fingerprint.toString() : null;
+        }
+
+        private File findExecutable(String tool) {
+            boolean windows = File.pathSeparatorChar == ';';
+            for (String dir : path.split(File.pathSeparator)) {
+                if (StringUtils.isEmpty(dir)) {
+                    continue;
+                }
+                if (windows) {
+                    for (String extension : WINDOWS_EXTENSIONS) {
+                        File executable = new File(dir, tool + extension);
+                        if (executable.isFile()) {
+                            return executable;
+                        }
+                    }
+                } else {
+                    File executable = new File(dir, tool);
+                    if (executable.isFile() && executable.canExecute()) {
+                        return executable;
+                    }
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package com.emenda.klocwork.util;
+
+import com.emenda.klocwork.KlocworkBuildAction;
+import com.emenda.klocwork.KlocworkConstants;
+import hudson.model.Job;
+import hudson.model.Run;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Issue counts of the builds of a job, kept in a tab separated file in the job
+ * directory so the trend chart can be drawn without loading any build.
+ *
+ * Each line holds a build number, the Klocwork build name and the critical,
+ * error, warning and review counts. Lines are appended as builds complete; a
+ * build recorded twice is read as its last line. The file is rewritten only
+ * when a build is deleted, and created from the builds of the job the first
+ * time it is read.
+ *
+ * Changes are serialised per job, so builds of different jobs never wait for
+ * each other, and the builds are loaded outside the lock when the file is
+ * created.
+ */
+public class KlocworkTrendIndex {
+
+    // job directory -> lock of its index, keyed on the location of the file
+    // rather than the job name, which a rename changes
+    private static final ConcurrentHashMap<String, Object> LOCKS = new ConcurrentHashMap<>();
+    private static final int BLOCK_SIZE = 8192;
+
+    private KlocworkTrendIndex() {
+    }
+
+    public static class Entry {
+
+        private final int number;
+        private final String buildName;
+        private final int criticalCount;
+        private final int errorCount;
+        private final int warningCount;
+        private final int reviewCount;
+
+        public Entry(int number, String buildName, int criticalCount, int errorCount,
+                     int warningCount, int reviewCount) {
+            this.number = number;
+            // tabs and line breaks would split the line
+            this.buildName = buildName.replaceAll("[\t\r\n]", " ");
+            this.criticalCount = criticalCount;
+            this.errorCount = errorCount;
+            this.warningCount = warningCount;
+            this.reviewCount = reviewCount;
+        }
+
+        public Entry(Run<?, ?> build, KlocworkBuildAction action) {
+            this(build.getNumber(), action.getBuildName(), action.getCriticalCount(),
+                action.getErrorCount(), action.getWarningCount(), action.getReviewCount());
+        }
+
+        public int getNumber() {
+            return number;
+        }
+
+        public String getBuildName() {
+            return buildName;
+        }
+
+        public int getCriticalCount() {
+            return criticalCount;
+        }
+
+        public int getErrorCount() {
+            return errorCount;
+        }
+
+        public int getWarningCount() {
+            return warningCount;
+        }
+
+        public int getReviewCount() {
+            return reviewCount;
+        }
+
+        private String toLine() {
+            return Integer.toString(number) + "\t" + buildName + "\t" + Integer.toString(criticalCount) + "\t" +
+                Integer.toString(errorCount) + "\t" + Integer.toString(warningCount) + "\t" +
+                Integer.toString(reviewCount) + "\n";
+        }
+
+        /*
+         * Returns the entry of a line, or null if the line is incomplete
+         */
+        private static Entry fromLine(String line) {
+            String[] fields = line.split("\t", -1);
+            if (fields.length != 6) {
+                return null;
+            }
+            try {
+                return new Entry(Integer.parseInt(fields[0]), fields[1], Integer.parseInt(fields[2]),
+                    Integer.parseInt(fields[3]), Integer.parseInt(fields[4]), Integer.parseInt(fields[5]));
+            } catch (NumberFormatException ex) {
+                return null;
+            }
+        }
+    }
+
+    public static void append(Job<?, ?> job, Entry entry) throws IOException {
+        File file = getFile(job);
+        // created from the builds, which include this one
+        if (createIfMissing(job, file)) {
+            return;
+        }
+        synchronized (getLock(job)) {
+            try (Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8,
+                    StandardOpenOption.APPEND)) {
+                out.write(entry.toLine());
+            }
+        }
+    }
+
+    public static void remove(Job<?, ?> job, int number) throws IOException {
+        synchronized (getLock(job)) {
+            File file = getFile(job);
+            if (!file.exists()) {
+                return;
+            }
+            List<Entry> entries = new ArrayList<>();
+            boolean found = false;
+            try (BufferedReader in = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    Entry entry = Entry.fromLine(line);
+                    if (entry != null && entry.getNumber() != number) {
+                        entries.add(entry);
+                    } else {
+                        found = true;
+                    }
+                }
+            }
+            if (found) {
+                write(file, entries);
+            }
+        }
+    }
+
+    /*
+     * Returns the entries of the last count builds, oldest first. Only the end
+     * of the file is read
+     */
+    public static List<Entry> readLast(Job<?, ?> job, int count) throws IOException {
+        File file = getFile(job);
+        createIfMissing(job, file);
+        synchronized (getLock(job)) {
+            TreeMap<Integer, Entry> entries = new TreeMap<>();
+            try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+                long start = in.length();
+                byte[] tail = new byte[0];
+                long lines = 0;
+                while (start > 0 && entries.size() < count) {
+                    int length = (int) Math.min(BLOCK_SIZE, start);
+                    start -= length;
+                    byte[] block = new byte[length + tail.length];
+                    in.seek(start);
+                    in.readFully(block, 0, length);
+                    System.arraycopy(tail, 0, block, length, tail.length);
+                    tail = block;
+                    for (int i = 0; i < length; i++) {
+                        if (block[i] == '\n') {
+                            lines++;
+                        }
+                    }
+                    // parsed once the tail may hold enough lines
+                    if (lines > count || start == 0) {
+                        entries = parse(tail, start == 0);
+                    }
+                }
+            }
+            List<Entry> result = new ArrayList<>(entries.values());
+            return result.subList(Math.max(result.size() - count, 0), result.size());
+        }
+    }
+
+    /*
+     * Returns the time the index was last changed, 0 if it does not exist
+     */
+    public static long getLastModified(Job<?, ?> job) {
+        synchronized (getLock(job)) {
+            return getFile(job).lastModified();
+        }
+    }
+
+    /*
+     * Parses the complete lines of the end of the file; the first line is
+     * only complete at the start of the file
+     */
+    private static TreeMap<Integer, Entry> parse(byte[] tail, boolean atStart) {
+        String text = new String(tail, StandardCharsets.UTF_8);
+        String[] lines = text.split("\n");
+        TreeMap<Integer, Entry> entries = new TreeMap<>();
+        for (int i = atStart ? 0 : 1; i < lines.length; i++) {
+            Entry entry = Entry.fromLine(lines[i]);
+            if (entry != null) {
+                entries.put(entry.getNumber(), entry);
+            }
+        }
+        return entries;
+    }
+
+    /*
+     * Creates the file from the builds of the job if it does not exist,
+     * returns whether it was created. The builds are loaded, each of them
+     * once, before taking the lock; the file is only written if no other
+     * thread created it in the meantime, as the builds it was created from may
+     * include a later one
+     */
+    private static boolean createIfMissing(Job<?, ?> job, File file) throws IOException {
+        if (file.exists()) {
+            return false;
+        }
+        List<Entry> entries = new ArrayList<>();
+        for (Run<?, ?> build : job.getBuilds()) {
+            KlocworkBuildAction action = build.getAction(KlocworkBuildAction.class);
+            if (action != null) {
+                entries.add(new Entry(build, action));
+            }
+        }
+        Collections.reverse(entries);
+        synchronized (getLock(job)) {
+            if (file.exists()) {
+                return false;
+            }
+            write(file, entries);
+            return true;
+        }
+    }
+
+    private static Object getLock(Job<?, ?> job) {
+        String key = job.getRootDir().getAbsolutePath();
+        Object lock = LOCKS.get(key);
+        if (lock == null) {
+            Object newLock = new Object();
+            lock = LOCKS.putIfAbsent(key, newLock);
+            if (lock == null) {
+                lock = newLock;
+            }
+        }
+        return lock;
+    }
+
+    private static void write(File file, List<Entry> entries) throws IOException {
+        Path tmpFile = Files.createTempFile(file.getParentFile().toPath(), file.getName(), ".tmp");
+        try {
+            try (BufferedWriter out = Files.newBufferedWriter(tmpFile, StandardCharsets.UTF_8)) {
+                for (Entry entry : entries) {
+                    out.write(entry.toLine());
+                }
+            }
+            Files.move(tmpFile, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmpFile);
+        }
+    }
+
+    private static File getFile(Job<?, ?> job) {
+        return new File(job.getRootDir(), KlocworkConstants.TREND_INDEX_FILE);
+    }
+}
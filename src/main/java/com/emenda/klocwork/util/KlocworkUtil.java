@@ -12,8 +12,12 @@ import hudson.AbortException;
 import hudson.EnvVars;
 import hudson.FilePath;
 import hudson.Launcher;
+import hudson.model.Computer;
+import hudson.model.Node;
+import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.util.ArgumentListBuilder;
+import jenkins.util.BuildListenerAdapter;
 import org.apache.commons.lang3.StringUtils;
 
 import java.io.*;
@@ -21,9 +25,11 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.net.URLEncoder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Collections;
+import java.util.zip.GZIPOutputStream;
 
 public class KlocworkUtil {
 
@@ -122,6 +128,17 @@ public class KlocworkUtil {
         return (new FilePath(workspace, getDefaultBuildSpec(buildSpec))).getRemote();
     }
 
+    /*
+     * Returns the named cache directory under the root directory of the agent
+     * the workspace is on, or null if the agent is not available
+     */
+    public static FilePath getAgentCacheDir(FilePath workspace, String name) {
+        Computer computer = workspace.toComputer();
+        Node node = (computer != null) ? computer.getNode() : null;
+        FilePath rootPath = (node != null) ? node.getRootPath() : null;
+        return (rootPath != null) ? rootPath.child(name) : null;
+    }
+
     public static String getDefaultBuildSpec(String buildSpec) {
         return (StringUtils.isEmpty(buildSpec)) ? KlocworkConstants.DEFAULT_BUILD_SPEC : buildSpec;
     }
@@ -176,6 +193,19 @@ public class KlocworkUtil {
     public static ByteArrayOutputStream executeCommandParseOutput(Launcher launcher,
                                      FilePath buildDir, EnvVars envVars, ArgumentListBuilder cmds)
             throws AbortException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        executeCommandParseOutput(launcher, buildDir, envVars, cmds, outputStream, outputStream);
+        return outputStream;
+    }
+
+    /*
+     * Runs the command writing its standard output and error to the given
+     * streams, returns its exit code
+     */
+    public static int executeCommandParseOutput(Launcher launcher,
+                                     FilePath buildDir, EnvVars envVars, ArgumentListBuilder cmds,
+                                     OutputStream stdout, OutputStream stderr)
+            throws AbortException {
         if (launcher.isUnix()) {
             cmds = new ArgumentListBuilder("/bin/sh", "-c", cmds.toString());
         } else {
@@ -183,12 +213,10 @@ public class KlocworkUtil {
             cmds = new ArgumentListBuilder("cmd.exe", "/C", cmds.toString());
         }
         try {
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            launcher.launch()
-                    .stdout(outputStream).stderr(outputStream).
+            return launcher.launch()
+                    .stdout(stdout).stderr(stderr).
                     pwd(buildDir).envs(envVars).cmds(cmds)
                     .join();
-            return outputStream;
         } catch (IOException | InterruptedException ex) {
             throw new AbortException(ex.getMessage());
         }
@@ -200,190 +228,74 @@ public class KlocworkUtil {
 	}
 
 	public static int generateKwListOutput(FilePath xmlReport, ByteArrayOutputStream outputStream, TaskListener listener, String ciTool, Launcher launcher){
+        return generateKwListOutput(xmlReport, outputStream, listener,
+            new KlocworkConsoleListing(listener.getLogger()), ciTool, launcher);
+    }
+
+	public static int generateKwListOutput(FilePath xmlReport, ByteArrayOutputStream outputStream, TaskListener listener,
+                                           KlocworkConsoleListing listing, String ciTool, Launcher launcher){
         int returnCode = 0;
-        if(ciTool.equalsIgnoreCase("kwciagent")){
-            try {
-                outputStream.writeTo(xmlReport.write());
+        // kwciagent produces a complete XML report, kwcheck only the problem
+        // elements which we need to wrap in an errorList element ourselves, as
+        // we do when nothing was listed
+        boolean copyProblems = !ciTool.equalsIgnoreCase("kwciagent") || outputStream.size() == 0;
+        if (!copyProblems) {
+            try (OutputStream reportStream = xmlReport.write()) {
+                outputStream.writeTo(reportStream);
             } catch (IOException | InterruptedException e) {
                 returnCode = 1;
                 listener.getLogger().println(e.getMessage());
             }
-            InputStream inputStream = null;
-            BufferedReader bufferedReader = null;
-            try {
-                inputStream = new ByteArrayInputStream(outputStream.toByteArray());
-                if (launcher.isUnix()) {
-                	bufferedReader = new BufferedReader(new InputStreamReader(inputStream, "UTF-8"));
-                } else {
-                	bufferedReader = new BufferedReader(new InputStreamReader(inputStream));
-                }
-                String line = null;
-                while ((line = bufferedReader.readLine()) != null) {
-                    if (line.trim().startsWith("<problemID>")) {
-                        Matcher matcher = Pattern.compile("<.+>(.+)<.+>").matcher(line);
-                        if (matcher.find()) {
-                            listener.getLogger().print(matcher.group(1) + "\t");
-                        }
-                    } else if (line.trim().startsWith("<file>")) {
-                        Matcher matcher = Pattern.compile("<.+>(.+)<.+>").matcher(line);
-                        if (matcher.find()) {
-                            listener.getLogger().print(matcher.group(1) + "\t");
-                        }
-                    } else if (line.trim().startsWith("<method>")) {
-                        Matcher matcher = Pattern.compile("<.+>(.+)<.+>").matcher(line);
-                        if (matcher.find()) {
-                            listener.getLogger().print(matcher.group(1) + "\t");
-                        }
-                    } else if (line.trim().startsWith("<code>")) {
-                        Matcher matcher = Pattern.compile("<.+>(.+)<.+>").matcher(line);
-                        if (matcher.find()) {
-                            listener.getLogger().print(matcher.group(1) + "\t");
-                        }
-                    } else if (line.trim().startsWith("<message>")) {
-                        Matcher matcher = Pattern.compile("<.+>(.+)<.+>").matcher(line);
-                        if (matcher.find()) {
-                            listener.getLogger().print(matcher.group(1) + "\t");
-                        }
-                    } else if (line.trim().startsWith("<citingStatus>")) {
-                        Matcher matcher = Pattern.compile("<.+>(.+)<.+>").matcher(line);
-                        if (matcher.find()) {
-                            listener.getLogger().print(matcher.group(1) + "\t");
-                        }
-                    } else if (line.trim().startsWith("<severity>")) {
-                        Matcher matcher = Pattern.compile("<.+>(.+)<.+>").matcher(line);
-                        if (matcher.find()) {
-                            listener.getLogger().print(matcher.group(1) + "\t");
-                        }
-                    } else if (line.trim().startsWith("<severitylevel>")) {
-                        Matcher matcher = Pattern.compile("<.+>(.+)<.+>").matcher(line);
-                        if (matcher.find()) {
-                            listener.getLogger().print(matcher.group(1) + "\t");
-                        }
-                    } else if (line.trim().startsWith("</problem>")) {
-                        listener.getLogger().println();
-                    }
-                }
-            } catch (IOException e) {
-                returnCode = 1;
-                listener.getLogger().println(e.getMessage());
-            } finally {
-                try {
-                    if (inputStream != null) {
-                        inputStream.close();
-                    }
-                } catch (Exception ex) {
-                    returnCode = 1;
-                }
-            }
         }
-        else {
-            InputStream inputStream = null;
-            BufferedReader bufferedReader = null;
-            BufferedWriter bufferedWriter = null;
-            try {
+        BufferedWriter bufferedWriter = null;
+        try {
+            if (copyProblems) {
                 bufferedWriter = new BufferedWriter(new OutputStreamWriter(xmlReport.write(), "UTF-8"));
                 bufferedWriter.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>");
                 bufferedWriter.newLine();
                 bufferedWriter.write("<errorList>");
                 bufferedWriter.newLine();
-                inputStream = new ByteArrayInputStream(outputStream.toByteArray());
-                if (launcher.isUnix()) {
-                	bufferedReader = new BufferedReader(new InputStreamReader(inputStream, "UTF-8"));
-                } else {
-                	bufferedReader = new BufferedReader(new InputStreamReader(inputStream));
-                }
-                String line = null;
-                while ((line = bufferedReader.readLine()) != null) {
-                    if (line.trim().startsWith("<problem>")) {
-                        bufferedWriter.write(line);
-                        bufferedWriter.newLine();
-                    } else if (line.trim().startsWith("<problemID>")) {
-                        bufferedWriter.write(line);
-                        bufferedWriter.newLine();
-                        Matcher matcher = Pattern.compile("<.+>(.+)<.+>").matcher(line);
-                        if (matcher.find()) {
-                            listener.getLogger().print(matcher.group(1) + "\t");
-                        }
-                    } else if (line.trim().startsWith("<file>")) {
-                        bufferedWriter.write(line);
-                        bufferedWriter.newLine();
-                        Matcher matcher = Pattern.compile("<.+>(.+)<.+>").matcher(line);
-                        if (matcher.find()) {
-                            listener.getLogger().print(matcher.group(1) + "\t");
-                        }
-                    } else if (line.trim().startsWith("<method>")) {
-                        bufferedWriter.write(line);
-                        bufferedWriter.newLine();
-                        Matcher matcher = Pattern.compile("<.+>(.+)<.+>").matcher(line);
-                        if (matcher.find()) {
-                            listener.getLogger().print(matcher.group(1) + "\t");
-                        }
-                    } else if (line.trim().startsWith("<code>")) {
-                        bufferedWriter.write(line);
-                        bufferedWriter.newLine();
-                        Matcher matcher = Pattern.compile("<.+>(.+)<.+>").matcher(line);
-                        if (matcher.find()) {
-                            listener.getLogger().print(matcher.group(1) + "\t");
-                        }
-                    } else if (line.trim().startsWith("<message>")) {
-                        bufferedWriter.write(line);
-                        bufferedWriter.newLine();
-                        Matcher matcher = Pattern.compile("<.+>(.+)<.+>").matcher(line);
-                        if (matcher.find()) {
-                            listener.getLogger().print(matcher.group(1) + "\t");
-                        }
-                    } else if (line.trim().startsWith("<citingStatus>")) {
-                        bufferedWriter.write(line);
-                        bufferedWriter.newLine();
-                        Matcher matcher = Pattern.compile("<.+>(.+)<.+>").matcher(line);
-                        if (matcher.find()) {
-                            listener.getLogger().print(matcher.group(1) + "\t");
-                        }
-                    } else if (line.trim().startsWith("<severity>")) {
-                        bufferedWriter.write(line);
-                        bufferedWriter.newLine();
-                        Matcher matcher = Pattern.compile("<.+>(.+)<.+>").matcher(line);
-                        if (matcher.find()) {
-                            listener.getLogger().print(matcher.group(1) + "\t");
-                        }
-                    } else if (line.trim().startsWith("<severitylevel>")) {
-                        bufferedWriter.write(line);
-                        bufferedWriter.newLine();
-                        Matcher matcher = Pattern.compile("<.+>(.+)<.+>").matcher(line);
-                        if (matcher.find()) {
-                            listener.getLogger().print(matcher.group(1) + "\t");
-                        }
-                    } else if (line.trim().startsWith("</problem>")) {
-                        bufferedWriter.write(line);
-                        bufferedWriter.newLine();
-                        listener.getLogger().println();
-                    }
-                }
+            }
+            Charset charset = (launcher.isUnix()) ? StandardCharsets.UTF_8 : Charset.defaultCharset();
+            BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(
+                    new ByteArrayInputStream(outputStream.toByteArray()), charset));
+            new KlocworkListOutputTransformer(listing, bufferedWriter)
+                    .transform(bufferedReader);
+            if (copyProblems) {
                 bufferedWriter.write("</errorList>");
                 bufferedWriter.newLine();
-            } catch (IOException | InterruptedException e) {
-                returnCode = 1;
-                listener.getLogger().println(e.getMessage());
-            } finally {
-                try {
-                    if (inputStream != null) {
-                        inputStream.close();
-                    }
-                } catch (Exception ex) {
-                    returnCode = 1;
-                }
-                try {
-                    if (bufferedWriter != null) {
-                        bufferedWriter.close();
-                    }
-                } catch (Exception ex) {
-                    returnCode = 1;
+            }
+        } catch (IOException | InterruptedException e) {
+            returnCode = 1;
+            listener.getLogger().println(e.getMessage());
+        } finally {
+            try {
+                if (bufferedWriter != null) {
+                    bufferedWriter.close();
                 }
+            } catch (Exception ex) {
+                returnCode = 1;
             }
         }
         return returnCode;
     }
 
+    public static Writer createGzipWriter(FilePath file) throws IOException, InterruptedException {
+        return new BufferedWriter(new OutputStreamWriter(
+            new GZIPOutputStream(file.write()), StandardCharsets.UTF_8));
+    }
+
+    public static void archiveArtifact(Run<?, ?> build, FilePath file, Launcher launcher,
+                                       TaskListener listener) throws AbortException {
+        try {
+            build.getArtifactManager().archive(file.getParent(), launcher,
+                BuildListenerAdapter.wrap(listener),
+                Collections.singletonMap(file.getName(), file.getName()));
+        } catch (IOException | InterruptedException ex) {
+            throw new AbortException(ex.getMessage());
+        }
+    }
+
     public static String createKlocworkAPIRequest(String action,
         String query, EnvVars envVars) throws AbortException {
 
@@ -423,6 +335,25 @@ public class KlocworkUtil {
         return response;
     }
 
+    /*
+     * Writes the response of a web API request to out, one JSON object per
+     * line, without holding it in memory
+     */
+    public static void writeJSONResponse(String request,
+        EnvVars envVars, Launcher launcher, Writer out) throws AbortException {
+        try {
+            String[] ltokenLine = KlocworkUtil.getLtokenValues(envVars, launcher);
+            KlocworkApiConnection kwService = new KlocworkApiConnection(
+                            envVars.get(KlocworkConstants.KLOCWORK_URL),
+                            ltokenLine[KlocworkConstants.LTOKEN_USER_INDEX],
+                            ltokenLine[KlocworkConstants.LTOKEN_HASH_INDEX]);
+            kwService.sendRequest(request, out);
+        } catch (IOException ex) {
+            throw new AbortException("Error: failed to connect to the Klocwork" +
+                " web API.\nCause: " + ex.getMessage());
+        }
+    }
+
     private static String getQueryDefaultGroupingOff(String query) {
         if(!query.toLowerCase().contains("grouping:off")
                 && !query.toLowerCase().contains("grouping:on")){
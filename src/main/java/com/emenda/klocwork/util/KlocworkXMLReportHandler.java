@@ -7,6 +7,8 @@ import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Stack;
 
@@ -22,11 +24,22 @@ public class KlocworkXMLReportHandler extends DefaultHandler  {
     private boolean enableHTMLReport;
     private final KlocworkSeverities enabledSeverites;
     private final KlocworkStatuses enabledStatuses;
+    private final DataOutput issueOutput;
 
     public KlocworkXMLReportHandler(boolean enableHTMLReport, KlocworkSeverities enabledSeverites, KlocworkStatuses enabledStatuses){
+        this(enableHTMLReport, enabledSeverites, enabledStatuses, null);
+    }
+
+    /*
+     * With an issueOutput the issues are written to it as they are parsed,
+     * each preceded by true, instead of being kept in the issue list
+     */
+    public KlocworkXMLReportHandler(boolean enableHTMLReport, KlocworkSeverities enabledSeverites, KlocworkStatuses enabledStatuses,
+                                    DataOutput issueOutput){
         this.enableHTMLReport = enableHTMLReport;
         this.enabledSeverites = enabledSeverites;
         this.enabledStatuses = enabledStatuses;
+        this.issueOutput = issueOutput;
     }
 
     public void startElement(String uri, String localName,
@@ -67,7 +80,14 @@ public class KlocworkXMLReportHandler extends DefaultHandler  {
                         || enabledSeverites.getEnabled().get(issue.getSeverity().toLowerCase()))
                         && enabledStatuses.getEnabled().get(issue.getStatus().toLowerCase())) {
                     this.totalIssueCount++;
-                    if (enableHTMLReport) {
+                    if (enableHTMLReport && issueOutput != null) {
+                        try {
+                            issueOutput.writeBoolean(true);
+                            issue.write(issueOutput);
+                        } catch (IOException ex) {
+                            throw new SAXException(ex);
+                        }
+                    } else if (enableHTMLReport) {
                         issuesList.add(issue);
                     }
                 }
@@ -0,0 +1,61 @@
+package com.emenda.klocwork.util;
+
+import com.emenda.klocwork.definitions.KlocworkSeverities;
+import com.emenda.klocwork.definitions.KlocworkStatuses;
+import hudson.AbortException;
+import jenkins.security.MasterToSlaveCallable;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.*;
+import java.nio.file.Paths;
+import java.util.zip.GZIPOutputStream;
+
+/*
+ * Parses a kwcheck XML report on the agent and writes the enabled issues to
+ * issueFile as they are found, gzipped, each preceded by true and the last
+ * followed by false (see KlocworkIssue.write). Returns the number of issues.
+ *
+ * The issues are read back from the file one at a time, so that neither the
+ * agent nor the controller holds all of them in memory.
+ */
+public class KlocworkXMLReportIssueWriter extends MasterToSlaveCallable<Integer,IOException> implements Serializable {
+
+    private final String workspace;
+    private final String xmlReport;
+    private final String issueFile;
+    private final KlocworkSeverities enabledSeverites;
+    private final KlocworkStatuses enabledStatuses;
+
+    public KlocworkXMLReportIssueWriter(String workspace, String xmlReport, String issueFile,
+                                        KlocworkSeverities enabledSeverites, KlocworkStatuses enabledStatuses) {
+        this.workspace = workspace;
+        this.xmlReport = xmlReport;
+        this.issueFile = issueFile;
+        this.enabledSeverites = enabledSeverites;
+        this.enabledStatuses = enabledStatuses;
+    }
+
+    public Integer call() throws IOException {
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        //We must handle both relative and absolute paths
+        File report = Paths.get(xmlReport).isAbsolute() ? new File(xmlReport) : new File(workspace, xmlReport);
+        try (InputStream xmlInput = new FileInputStream(report);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                 new GZIPOutputStream(new FileOutputStream(issueFile))))) {
+            InputSource inputSource = new InputSource(new InputStreamReader(xmlInput, "UTF-8"));
+            inputSource.setEncoding("UTF-8");
+
+            SAXParser saxParser = factory.newSAXParser();
+            KlocworkXMLReportHandler handler = new KlocworkXMLReportHandler(true, enabledSeverites, enabledStatuses, out);
+            saxParser.parse(inputSource, handler);
+            out.writeBoolean(false);
+            return handler.getTotalIssueCount();
+        } catch (ParserConfigurationException | SAXException ex) {
+            throw new AbortException(ex.getMessage());
+        }
+    }
+}
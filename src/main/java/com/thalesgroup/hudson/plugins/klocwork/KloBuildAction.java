@@ -23,6 +23,7 @@
  *******************************************************************************/
 package com.thalesgroup.hudson.plugins.klocwork;
 
+import com.emenda.klocwork.util.KlocworkDownsampler;
 import com.thalesgroup.hudson.plugins.klocwork.config.KloConfig;
 import com.thalesgroup.hudson.plugins.klocwork.config.KloConfigTrendGraph;
 import com.thalesgroup.hudson.plugins.klocwork.graph.KloTrendGraph;
@@ -40,7 +41,10 @@ import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 
@@ -127,7 +131,7 @@ public class KloBuildAction extends AbstractKloBuildAction {
 		}
     }
 
-    private DataSetBuilder<String, NumberOnlyBuildLabel> getDataSetBuilder() {
+    private DataSetBuilder<String, NumberOnlyBuildLabel> getDataSetBuilder(int maxPoints) {
         DataSetBuilder<String, ChartUtil.NumberOnlyBuildLabel> dsb = new DataSetBuilder<String, ChartUtil.NumberOnlyBuildLabel>();
 
         int interval = Integer.parseInt(kloConfig.getTrendGraph().getInterval());
@@ -135,6 +139,9 @@ public class KloBuildAction extends AbstractKloBuildAction {
 
         int count = 0;
 
+        // builds are collected newest first and downsampled oldest first
+        List<ChartUtil.NumberOnlyBuildLabel> labels = new ArrayList<ChartUtil.NumberOnlyBuildLabel>();
+        List<KloReport> reports = new ArrayList<KloReport>();
         for (KloBuildAction a = this; a != null; a = a.getPreviousResult()) {
 
             if (checkBuildNumber(interval, trendNum, count)) {
@@ -144,26 +151,37 @@ public class KloBuildAction extends AbstractKloBuildAction {
                 // to super class... verify this works!
                 ChartUtil.NumberOnlyBuildLabel label = new ChartUtil.NumberOnlyBuildLabel((Run) a.owner);
 				if (a.getResult() != null) {
-					KloReport report = a.getResult().getReport();
-
-					KloConfigTrendGraph configGraph = kloConfig.getTrendGraph();
-
-					if (configGraph.isDisplayHighSeverity()) {
-						//Severity higher than 3 --> Warnings and suggestions
-						dsb.add(report.getNumberHighSeverities(), "Warnings and\nsuggestions", label);
-					}
-					if (configGraph.isDisplayLowSeverity()) {
-						//Severity lower than 4 (1=Critical, 2=Severe, 3=Error)
-						dsb.add(report.getNumberLowSeverities(), "Critical errors", label);
-					}
-
-					if (configGraph.isDisplayAllError()) {
-						dsb.add(report.getNumberTotal(), "All errors", label);
-					}
+					labels.add(label);
+					reports.add(a.getResult().getReport());
 				}
             }
             count++;
         }
+        Collections.reverse(labels);
+        Collections.reverse(reports);
+
+        double[] totals = new double[reports.size()];
+        for (int i = 0; i < totals.length; i++) {
+            totals[i] = reports.get(i).getNumberTotal();
+        }
+        KloConfigTrendGraph configGraph = kloConfig.getTrendGraph();
+        for (int i : KlocworkDownsampler.select(totals, maxPoints)) {
+            KloReport report = reports.get(i);
+            ChartUtil.NumberOnlyBuildLabel label = labels.get(i);
+
+            if (configGraph.isDisplayHighSeverity()) {
+                //Severity higher than 3 --> Warnings and suggestions
+                dsb.add(report.getNumberHighSeverities(), "Warnings and\nsuggestions", label);
+            }
+            if (configGraph.isDisplayLowSeverity()) {
+                //Severity lower than 4 (1=Critical, 2=Severe, 3=Error)
+                dsb.add(report.getNumberLowSeverities(), "Critical errors", label);
+            }
+
+            if (configGraph.isDisplayAllError()) {
+                dsb.add(report.getNumberTotal(), "All errors", label);
+            }
+        }
         return dsb;
     }
 
@@ -179,7 +197,17 @@ public class KloBuildAction extends AbstractKloBuildAction {
 			return;
 		}
 
-        Graph g = new KloTrendGraph(getOwner(), getDataSetBuilder().build(),
+        // the whole history is drawn unless maxPoints asks for it to be
+        // downsampled, see KlocworkDownsampler
+        int maxPoints = 0;
+        if (req.getParameter("maxPoints") != null) {
+            try {
+                maxPoints = Integer.parseInt(req.getParameter("maxPoints"));
+            } catch (NumberFormatException nfe) {
+                // keep the default
+            }
+        }
+        Graph g = new KloTrendGraph(getOwner(), getDataSetBuilder(maxPoints).build(),
                 "Number of errors", kloConfig.getTrendGraph().getXSize(), kloConfig.getTrendGraph().getYSize());
         g.doPng(req, rsp);
     }